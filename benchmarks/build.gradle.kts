@@ -0,0 +1,46 @@
+/*
+ * JMH benchmarks for the chat, mention and private message pipelines.
+ *
+ * Run all of them with ./gradlew :benchmarks:jmh
+ * or a subset with ./gradlew :benchmarks:jmh -Pbenchmarks=ChatBenchmark
+ */
+
+plugins {
+    java
+    alias(libs.plugins.me.champeau.jmh)
+}
+
+repositories {
+    mavenCentral()
+    maven {
+        url = uri("https://repo.papermc.io/repository/maven-public/")
+    }
+
+    maven {
+        url = uri("https://repo.extendedclip.com/content/repositories/placeholderapi/")
+    }
+}
+
+dependencies {
+    jmhImplementation(project(":"))
+    jmhImplementation(libs.io.papermc.paper.paper.api)
+    jmhImplementation(libs.me.clip.placeholderapi)
+    jmhImplementation(libs.org.mockbukkit.mockbukkit)
+}
+
+java.sourceCompatibility = JavaVersion.VERSION_17
+
+tasks.withType<JavaCompile>() {
+    options.encoding = "UTF-8"
+}
+
+jmh {
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // Reports allocation per operation (gc.alloc.rate.norm) next to throughput
+    profilers.add("gc")
+    resultFormat.set("JSON")
+
+    findProperty("benchmarks")?.let { includes.add(it.toString()) }
+}
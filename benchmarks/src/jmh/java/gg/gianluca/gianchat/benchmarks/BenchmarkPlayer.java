@@ -0,0 +1,53 @@
+package gg.gianluca.gianchat.benchmarks;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.title.Title;
+import org.bukkit.Location;
+import org.bukkit.Sound;
+import org.jetbrains.annotations.NotNull;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A player that only counts what it receives. PlayerMock keeps every message
+ * it receives, which would grow without bound over a benchmark run.
+ */
+public class BenchmarkPlayer extends PlayerMock {
+    private long messages;
+    private long notifications;
+
+    public BenchmarkPlayer(ServerMock server, String name) {
+        super(server, name, UUID.nameUUIDFromBytes(("BenchmarkPlayer:" + name).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public void sendMessage(@NotNull Component message) {
+        messages++;
+    }
+
+    @Override
+    public void sendActionBar(@NotNull Component message) {
+        notifications++;
+    }
+
+    @Override
+    public void showTitle(@NotNull Title title) {
+        notifications++;
+    }
+
+    @Override
+    public void playSound(@NotNull Location location, @NotNull Sound sound, float volume, float pitch) {
+        notifications++;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public long getNotifications() {
+        return notifications;
+    }
+}
@@ -0,0 +1,269 @@
+package gg.gianluca.gianchat.benchmarks;
+
+import gg.gianluca.gianchat.GianChat;
+import net.kyori.adventure.text.Component;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An in-process server with GianChat enabled and a number of online players.
+ * MockBukkit stands in for the server and the players, and PlaceholderAPI is
+ * replaced by a fixed backend so no expansions have to be installed.
+ */
+public final class BenchmarkServer {
+    private static final String[] WORDS = {
+        "hey", "did", "anyone", "see", "the", "new", "build", "near", "spawn", "it", "looks", "great",
+        "who", "wants", "to", "trade", "diamonds", "for", "some", "emeralds", "later", "tonight"
+    };
+
+    private final ExecutorService mainThread;
+    private final ServerMock server;
+    private final GianChat plugin;
+    private final List<BenchmarkPlayer> players;
+
+    private BenchmarkServer(ExecutorService mainThread, ServerMock server, GianChat plugin, List<BenchmarkPlayer> players) {
+        this.mainThread = mainThread;
+        this.server = server;
+        this.plugin = plugin;
+        this.players = players;
+    }
+
+    /**
+     * Starts a server.
+     *
+     * @param playerCount The number of online players
+     * @param format The chat format every player uses, see {@link BenchmarkFormats}
+     * @param ownMainThread Whether the server gets its own main thread. Chat is async on
+     *                      a real server, so chat benchmarks must not run on the main thread.
+     */
+    public static BenchmarkServer start(int playerCount, String format, boolean ownMainThread) throws Exception {
+        ExecutorService mainThread = ownMainThread
+            ? Executors.newSingleThreadExecutor(task -> new Thread(task, "Server thread"))
+            : null;
+        Callable<BenchmarkServer> setup = () -> {
+            ServerMock server = MockBukkit.mock();
+            GianChat plugin = MockBukkit.loadWith(GianChat.class, loadDescription());
+
+            // Snapshots are refreshed once below instead of every tick
+            plugin.getPlaceholderSnapshots().stop();
+            plugin.getPlaceholderCache().setBackend(BenchmarkServer::resolvePlaceholder);
+            BenchmarkFormats.install(plugin, format);
+
+            // Private message benchmarks measure delivery, not the history and mail disk writes
+            YamlConfiguration disabled = new YamlConfiguration();
+            disabled.set("enabled", false);
+            plugin.getPrivateMessageManager().getHistory().loadConfig(disabled);
+            plugin.getPrivateMessageManager().getMail().loadConfig(disabled);
+
+            List<BenchmarkPlayer> players = new ArrayList<>(playerCount);
+            for (int i = 0; i < playerCount; i++) {
+                BenchmarkPlayer player = new BenchmarkPlayer(server, String.format("Player%04d", i));
+                server.addPlayer(player);
+                plugin.getFormatManager().refreshPlayerFormat(player);
+                plugin.getPlaceholderSnapshots().refresh(player);
+                players.add(player);
+            }
+            return new BenchmarkServer(mainThread, server, plugin, players);
+        };
+        return mainThread != null ? mainThread.submit(setup).get() : setup.call();
+    }
+
+    /**
+     * Loads plugin.yml without the PlaceholderAPI dependency, its placeholders are faked.
+     */
+    private static PluginDescriptionFile loadDescription() throws Exception {
+        YamlConfiguration description = YamlConfiguration.loadConfiguration(new InputStreamReader(
+            GianChat.class.getResourceAsStream("/plugin.yml"), StandardCharsets.UTF_8));
+        description.set("depend", null);
+        return new PluginDescriptionFile(new StringReader(description.saveToString()));
+    }
+
+    private static String resolvePlaceholder(Player player, String placeholder) {
+        return switch (placeholder) {
+            case "player_name" -> player.getName();
+            case "vault_groupprefix" -> "<gold>[Member]</gold>";
+            case "vault_group" -> "Member";
+            default -> "42";
+        };
+    }
+
+    /**
+     * Creates chat messages from random players that mention other online players.
+     *
+     * @param count The number of messages, must be a power of two
+     * @param mentions The number of players mentioned in each message
+     */
+    public List<BenchmarkMessage> createMessages(int count, int mentions) {
+        Random random = new Random(42);
+        List<BenchmarkMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            BenchmarkPlayer sender = players.get(random.nextInt(players.size()));
+            StringBuilder text = new StringBuilder();
+            int words = 6 + random.nextInt(10);
+            for (int word = 0; word < words; word++) {
+                if (word > 0) {
+                    text.append(' ');
+                }
+                text.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            for (int mention = 0; mention < mentions; mention++) {
+                BenchmarkPlayer mentioned = players.get(random.nextInt(players.size()));
+                if (mentioned != sender) {
+                    text.append(' ').append(mentioned.getName());
+                }
+            }
+            messages.add(new BenchmarkMessage(sender, text.toString(), Component.text(text.toString())));
+        }
+        return messages;
+    }
+
+    /**
+     * Runs one server tick, which runs the tasks benchmarks scheduled on the main thread.
+     */
+    public void tick() throws Exception {
+        runOnMainThread(() -> {
+            server.getScheduler().performOneTick();
+            return null;
+        });
+    }
+
+    public void stop() throws Exception {
+        runOnMainThread(() -> {
+            MockBukkit.unmock();
+            return null;
+        });
+        if (mainThread != null) {
+            mainThread.shutdown();
+        }
+    }
+
+    private void runOnMainThread(Callable<Void> task) throws Exception {
+        if (mainThread != null) {
+            mainThread.submit(task).get();
+        } else {
+            task.call();
+        }
+    }
+
+    public GianChat getPlugin() {
+        return plugin;
+    }
+
+    public List<BenchmarkPlayer> getPlayers() {
+        return players;
+    }
+
+    public record BenchmarkMessage(BenchmarkPlayer sender, String text, Component component) {
+    }
+
+    /**
+     * Chat formats of increasing complexity, all only using placeholders the fake backend knows.
+     */
+    static final class BenchmarkFormats {
+        private static final String PLAIN = """
+            priority: 1
+            prefix:
+              value: '%vault_groupprefix% '
+            name:
+              value: '%player_name%'
+            separator:
+              value: '<gray>»</gray> '
+            message:
+              value: '%message%'
+            """;
+
+        private static final String TOOLTIPS = """
+            priority: 1
+            prefix:
+              value: '<gradient:#00b4d8:#90e0ef>%vault_groupprefix%</gradient> '
+              tooltip:
+              - '<gray>Rank: %vault_group%</gray>'
+              - '<gray>Joined: %player_first_join_date%</gray>'
+            name:
+              value: '%player_name%'
+              tooltip:
+              - '<gray>Balance: %vault_eco_balance%</gray>'
+              - '<gray>Playtime: %statistic_hours_played% hours</gray>'
+            separator:
+              value: '<gray>»</gray> '
+            message:
+              value: '%message%'
+              tooltip:
+              - '<gray>Sent from %player_world%</gray>'
+            """;
+
+        private static final String INTERACTIVE = """
+            priority: 1
+            prefix:
+              value: '<gradient:#00b4d8:#90e0ef>%vault_groupprefix%</gradient> '
+              tooltip:
+              - '<gradient:#0077b6:#00b4d8>Click to message this player</gradient>'
+              - '<gray>Rank: %vault_group%</gray>'
+              - '<gray>Joined: %player_first_join_date%</gray>'
+              click_event:
+                type: 'SUGGEST_COMMAND'
+                command: '/msg %player_name% '
+            name:
+              value: '%player_name%'
+              tooltip:
+              - '<gray>Balance: %vault_eco_balance%</gray>'
+              - '<gray>Playtime: %statistic_hours_played% hours</gray>'
+              click_event:
+                type: 'RUN_COMMAND'
+                command: '/profile %player_name%'
+            separator:
+              value: '<gray>»</gray> '
+            message:
+              value: '%message%'
+              tooltip:
+              - '<gray>Sent from %player_world%</gray>'
+              click_event:
+                type: 'SUGGEST_COMMAND'
+                command: '/r '
+            """;
+
+        private BenchmarkFormats() {
+        }
+
+        /**
+         * Replaces every loaded format with a single benchmark format.
+         *
+         * @param name plain, tooltips or interactive
+         */
+        static void install(GianChat plugin, String name) throws IOException {
+            String format = switch (name) {
+                case "plain" -> PLAIN;
+                case "tooltips" -> TOOLTIPS;
+                case "interactive" -> INTERACTIVE;
+                default -> throw new IllegalArgumentException("Unknown benchmark format " + name);
+            };
+
+            File directory = new File(plugin.getDataFolder(), "formats");
+            File[] files = directory.listFiles((dir, file) -> file.endsWith(".yml"));
+            if (files != null) {
+                for (File file : files) {
+                    Files.delete(file.toPath());
+                }
+            }
+            directory.mkdirs();
+            Files.writeString(new File(directory, name + ".yml").toPath(), format);
+            plugin.getFormatManager().loadFormats();
+        }
+    }
+}
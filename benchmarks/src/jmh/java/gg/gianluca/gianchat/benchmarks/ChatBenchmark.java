@@ -0,0 +1,76 @@
+package gg.gianluca.gianchat.benchmarks;
+
+import gg.gianluca.gianchat.benchmarks.BenchmarkServer.BenchmarkMessage;
+import gg.gianluca.gianchat.listeners.ChatListener;
+import io.papermc.paper.chat.ChatRenderer;
+import io.papermc.paper.event.player.AsyncChatEvent;
+import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.chat.SignedMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ChatListener#onChat(AsyncChatEvent)} for one message delivered to every online player,
+ * from the async chat thread like on a real server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChatBenchmark {
+    private static final int MESSAGES = 1024;
+
+    @Param({"50", "500", "2000"})
+    public int players;
+
+    @Param({"plain", "tooltips", "interactive"})
+    public String format;
+
+    @Param({"0", "1", "3"})
+    public int mentions;
+
+    private BenchmarkServer server;
+    private ChatListener listener;
+    private Set<Audience> viewers;
+    private List<BenchmarkMessage> messages;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = BenchmarkServer.start(players, format, true);
+        listener = new ChatListener(server.getPlugin());
+        viewers = Set.copyOf(server.getPlayers());
+        messages = server.createMessages(MESSAGES, mentions);
+    }
+
+    @TearDown(Level.Iteration)
+    public void runScheduledTasks() throws Exception {
+        // Mention notifications are scheduled on the main thread
+        server.tick();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Benchmark
+    public AsyncChatEvent chat() {
+        BenchmarkMessage message = messages.get(next++ & (MESSAGES - 1));
+        AsyncChatEvent event = new AsyncChatEvent(true, message.sender(), viewers, ChatRenderer.defaultRenderer(),
+            message.component(), message.component(), SignedMessage.system(message.text(), message.component()));
+        listener.onChat(event);
+        return event;
+    }
+}
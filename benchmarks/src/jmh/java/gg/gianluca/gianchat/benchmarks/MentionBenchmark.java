@@ -0,0 +1,63 @@
+package gg.gianluca.gianchat.benchmarks;
+
+import gg.gianluca.gianchat.benchmarks.BenchmarkServer.BenchmarkMessage;
+import gg.gianluca.gianchat.mentions.MentionContext;
+import gg.gianluca.gianchat.mentions.MentionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MentionManager#processMentions} on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MentionBenchmark {
+    private static final int MESSAGES = 1024;
+
+    @Param({"50", "500", "2000"})
+    public int players;
+
+    @Param({"0", "1", "3"})
+    public int mentions;
+
+    private BenchmarkServer server;
+    private MentionManager mentionManager;
+    private List<BenchmarkMessage> messages;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = BenchmarkServer.start(players, "plain", true);
+        mentionManager = server.getPlugin().getMentionManager();
+        messages = server.createMessages(MESSAGES, mentions);
+    }
+
+    @TearDown(Level.Iteration)
+    public void runScheduledTasks() throws Exception {
+        // Mention notifications are scheduled on the main thread
+        server.tick();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Benchmark
+    public MentionContext processMentions() {
+        BenchmarkMessage message = messages.get(next++ & (MESSAGES - 1));
+        return mentionManager.processMentions(message.sender(), message.component());
+    }
+}
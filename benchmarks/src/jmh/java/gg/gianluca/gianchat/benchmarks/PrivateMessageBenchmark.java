@@ -0,0 +1,67 @@
+package gg.gianluca.gianchat.benchmarks;
+
+import gg.gianluca.gianchat.benchmarks.BenchmarkServer.BenchmarkMessage;
+import gg.gianluca.gianchat.messaging.PrivateMessageManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PrivateMessageManager#sendPrivateMessage}, including delivery to social spies.
+ * Private messages are sent from commands, so this runs on the main thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PrivateMessageBenchmark {
+    private static final int MESSAGES = 1024;
+
+    @Param({"50", "500", "2000"})
+    public int players;
+
+    @Param({"0", "10"})
+    public int spies;
+
+    private BenchmarkServer server;
+    private PrivateMessageManager privateMessageManager;
+    private List<BenchmarkMessage> messages;
+    private List<BenchmarkPlayer> recipients;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = BenchmarkServer.start(players, "plain", false);
+        privateMessageManager = server.getPlugin().getPrivateMessageManager();
+        messages = server.createMessages(MESSAGES, 0);
+        recipients = server.getPlayers();
+        for (int i = 0; i < spies; i++) {
+            privateMessageManager.toggleSocialSpy(recipients.get(recipients.size() - 1 - i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Benchmark
+    public boolean sendPrivateMessage() {
+        int index = next++;
+        BenchmarkMessage message = messages.get(index & (MESSAGES - 1));
+        BenchmarkPlayer recipient = recipients.get(index % recipients.size());
+        if (recipient == message.sender()) {
+            recipient = recipients.get((index + 1) % recipients.size());
+        }
+        return privateMessageManager.sendPrivateMessage(message.sender(), recipient, message.text());
+    }
+}
@@ -5,3 +5,5 @@
  */
 
 rootProject.name = "gianchat"
+
+include("benchmarks")
@@ -2,9 +2,14 @@ package gg.gianluca.gianchat;
 
 import gg.gianluca.gianchat.commands.*;
 import gg.gianluca.gianchat.format.FormatManager;
+import gg.gianluca.gianchat.logging.ChatLogWriter;
 import gg.gianluca.gianchat.messaging.PrivateMessageManager;
 import gg.gianluca.gianchat.mentions.MentionManager;
 import gg.gianluca.gianchat.placeholders.GianChatExpansion;
+import gg.gianluca.gianchat.placeholders.PlaceholderCache;
+import gg.gianluca.gianchat.placeholders.PlaceholderSnapshotService;
+import gg.gianluca.gianchat.players.PlayerNameRegistry;
+import gg.gianluca.gianchat.stats.StatisticsManager;
 import gg.gianluca.gianchat.data.DataManager;
 import gg.gianluca.gianchat.messages.MessageManager;
 import gg.gianluca.gianchat.listeners.*;
@@ -22,6 +27,11 @@ public class GianChat extends JavaPlugin {
     private MentionManager mentionManager;
     private DataManager dataManager;
     private MessageManager messageManager;
+    private PlaceholderCache placeholderCache;
+    private PlaceholderSnapshotService placeholderSnapshots;
+    private StatisticsManager statistics;
+    private ChatLogWriter chatLogWriter;
+    private PlayerNameRegistry playerNames;
     private GianChatAPI api;
 
     @Override
@@ -42,13 +52,21 @@ public class GianChat extends JavaPlugin {
         // Initialize API
         GianChatAPI.init(this);
         
+        this.statistics = new StatisticsManager(this);
+        this.chatLogWriter = new ChatLogWriter(this);
+        this.chatLogWriter.start();
+        this.playerNames = new PlayerNameRegistry(this);
+        this.playerNames.start();
+        this.placeholderCache = new PlaceholderCache(this);
         this.messageManager = new MessageManager(this);
         this.dataManager = new DataManager(this);
         this.dataManager.loadData();
-        this.dataManager.startAutoSave();
+        this.dataManager.start();
         
         this.formatManager = new FormatManager(this);
-        this.formatManager.loadFormats();
+        
+        this.placeholderSnapshots = new PlaceholderSnapshotService(this);
+        this.placeholderSnapshots.start();
         
         this.privateMessageManager = new PrivateMessageManager(this);
         this.mentionManager = new MentionManager(this);
@@ -66,6 +84,8 @@ public class GianChat extends JavaPlugin {
         getCommand("msgtoggle").setExecutor(new MessageToggleCommand(this));
         getCommand("socialspy").setExecutor(new SocialSpyCommand(this, privateMessageManager));
         getCommand("ignore").setExecutor(new IgnoreCommand(this, privateMessageManager));
+        getCommand("msghistory").setExecutor(new MessageHistoryCommand(this, privateMessageManager.getHistory()));
+        getCommand("mail").setExecutor(new MailCommand(this, privateMessageManager.getMail()));
         
         // Register listeners
         getServer().getPluginManager().registerEvents(new ChatListener(this), this);
@@ -73,8 +93,11 @@ public class GianChat extends JavaPlugin {
 
     @Override
     public void onDisable() {
-        if (dataManager != null) {
-            dataManager.cleanup();
+        if (chatLogWriter != null) {
+            chatLogWriter.stop();
+        }
+        if (placeholderSnapshots != null) {
+            placeholderSnapshots.stop();
         }
         if (privateMessageManager != null) {
             privateMessageManager.cleanup();
@@ -82,6 +105,9 @@ public class GianChat extends JavaPlugin {
         if (mentionManager != null) {
             mentionManager.saveData();
         }
+        if (dataManager != null) {
+            dataManager.cleanup();
+        }
         getLogger().info("GianChat has been disabled!");
     }
 
@@ -89,6 +115,10 @@ public class GianChat extends JavaPlugin {
         return mentionManager;
     }
 
+    public PlayerNameRegistry getPlayerNames() {
+        return playerNames;
+    }
+
     public FormatManager getFormatManager() {
         return formatManager;
     }
@@ -105,16 +135,37 @@ public class GianChat extends JavaPlugin {
         return messageManager;
     }
 
+    public PlaceholderCache getPlaceholderCache() {
+        return placeholderCache;
+    }
+
+    public PlaceholderSnapshotService getPlaceholderSnapshots() {
+        return placeholderSnapshots;
+    }
+
+    public StatisticsManager getStatistics() {
+        return statistics;
+    }
+
+    public ChatLogWriter getChatLogWriter() {
+        return chatLogWriter;
+    }
+
     public GianChatAPI getApi() {
         return api;
     }
 
     public void reload() {
         reloadConfig();
-        formatManager.loadFormats();
+        statistics.loadConfig();
+        chatLogWriter.loadConfig();
+        placeholderCache.loadConfig();
+        formatManager.reloadFormats();
         privateMessageManager.loadConfig();
         mentionManager.loadConfig();
-        dataManager.loadData();
+        dataManager.loadConfig();
+        placeholderSnapshots.loadConfig();
+        placeholderSnapshots.requestRefreshAll();
     }
 
     private void generatePlaceholdersFile() {
@@ -169,6 +220,40 @@ public class GianChat extends JavaPlugin {
                 Description: Returns "true" if mentions are globally enabled, "false" otherwise
                 Example: %gianchat_mention_enabled% -> true
 
+                Placeholder Cache Placeholders
+                -------------------
+                %gianchat_cache_hits%
+                Description: Gets the number of placeholder lookups served from the cache
+                Example: %gianchat_cache_hits% -> 15230
+
+                %gianchat_cache_misses%
+                Description: Gets the number of placeholder lookups that had to call PlaceholderAPI
+                Example: %gianchat_cache_misses% -> 812
+
+                %gianchat_cache_hit_rate%
+                Description: Gets the percentage of lookups served from the cache
+                Example: %gianchat_cache_hit_rate% -> 94.9
+
+                %gianchat_cache_size%
+                Description: Gets the number of values currently cached
+                Example: %gianchat_cache_size% -> 240
+
+                Statistics Placeholders
+                -------------------
+                %gianchat_stats_<stage>_<p50|p99|max|mean|count>%
+                Description: Gets how long a chat stage takes in milliseconds, or how often it ran
+                Stages: chat_total, chat_parse, chat_mentions, chat_render, chat_event, chat_fanout,
+                        placeholder_refresh, pm_total, pm_render, pm_event, pm_delivery
+                Example: %gianchat_stats_chat_total_p99% -> 0.412
+
+                %gianchat_stats_messages_per_second%
+                Description: Gets the average number of chat messages per second over the last minute
+                Example: %gianchat_stats_messages_per_second% -> 3.25
+
+                %gianchat_stats_private_messages_per_second%
+                Description: Gets the average number of private messages per second over the last minute
+                Example: %gianchat_stats_private_messages_per_second% -> 0.40
+
                 Note: All placeholders require the player to be online to work.
                 Note: These placeholders are provided through PlaceholderAPI and require it to be installed.
                 """;
@@ -12,6 +12,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * Public API for the GianChat plugin.
@@ -146,6 +149,17 @@ public class GianChatAPI {
         return plugin.getPrivateMessageManager().hasPlayerIgnored(player, target);
     }
 
+    /**
+     * Gets the players a player is ignoring. The set is a read-only view, UUIDs
+     * are only created while iterating it.
+     *
+     * @param player The player to get the ignored players of
+     * @return The UUIDs of the ignored players
+     */
+    public @NotNull Set<UUID> getIgnoredPlayers(Player player) {
+        return Collections.unmodifiableSet(plugin.getPrivateMessageManager().getIgnoredPlayers(player));
+    }
+
     /**
      * Sets whether a player is ignoring another player.
      *
@@ -235,10 +249,6 @@ public class GianChatAPI {
      * Reloads all configurations and data.
      */
     public void reload() {
-        plugin.reloadConfig();
-        plugin.getFormatManager().loadFormats();
-        plugin.getPrivateMessageManager().loadConfig();
-        plugin.getMentionManager().loadConfig();
-        plugin.getDataManager().loadData();
+        plugin.reload();
     }
 } 
\ No newline at end of file
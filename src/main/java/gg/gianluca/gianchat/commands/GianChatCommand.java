@@ -2,6 +2,9 @@ package gg.gianluca.gianchat.commands;
 
 import gg.gianluca.gianchat.GianChat;
 import gg.gianluca.gianchat.format.ChatFormat;
+import gg.gianluca.gianchat.stats.LatencyHistogram;
+import gg.gianluca.gianchat.stats.Stage;
+import gg.gianluca.gianchat.stats.StatisticsManager;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -20,7 +23,7 @@ import java.util.HashMap;
 
 public class GianChatCommand implements CommandExecutor, TabCompleter {
     private final GianChat plugin;
-    private final List<String> SUBCOMMANDS = Arrays.asList("list", "reload", "test");
+    private final List<String> SUBCOMMANDS = Arrays.asList("list", "reload", "test", "stats");
 
     public GianChatCommand(GianChat plugin) {
         this.plugin = plugin;
@@ -68,6 +71,14 @@ public class GianChatCommand implements CommandExecutor, TabCompleter {
                 listFormats(player);
                 break;
 
+            case "stats":
+                if (!player.hasPermission("gianchat.commands.stats")) {
+                    player.sendMessage(plugin.getMessageManager().getMessage("error.no_permission"));
+                    return true;
+                }
+                handleStatsCommand(player, args);
+                break;
+
             case "help":
             default:
                 showHelp(player);
@@ -92,6 +103,9 @@ public class GianChatCommand implements CommandExecutor, TabCompleter {
         if (player.hasPermission("gianchat.list")) {
             player.sendMessage(plugin.getMessageManager().getMessage("gianchat.help.list", placeholders));
         }
+        if (player.hasPermission("gianchat.commands.stats")) {
+            player.sendMessage(plugin.getMessageManager().getMessage("gianchat.help.stats", placeholders));
+        }
         
         player.sendMessage(plugin.getMessageManager().getMessage("gianchat.help.footer", placeholders));
     }
@@ -119,6 +133,41 @@ public class GianChatCommand implements CommandExecutor, TabCompleter {
         player.sendMessage(plugin.getMessageManager().getMessage("format.set", placeholders));
     }
 
+    private void handleStatsCommand(Player player, String[] args) {
+        StatisticsManager statistics = plugin.getStatistics();
+        if (args.length > 1 && args[1].equalsIgnoreCase("reset")) {
+            statistics.reset();
+            player.sendMessage(plugin.getMessageManager().getMessage("stats.reset"));
+            return;
+        }
+
+        if (!statistics.isEnabled()) {
+            player.sendMessage(plugin.getMessageManager().getMessage("stats.disabled"));
+            return;
+        }
+
+        player.sendMessage(plugin.getMessageManager().getMessage("stats.header"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = statistics.getHistogram(stage);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+
+            Map<String, String> placeholders = new HashMap<>();
+            placeholders.put("stage", stage.getDisplayName());
+            placeholders.put("p50", StatisticsManager.formatDuration(histogram.getPercentile(50)));
+            placeholders.put("p99", StatisticsManager.formatDuration(histogram.getPercentile(99)));
+            placeholders.put("max", StatisticsManager.formatDuration(histogram.getMax()));
+            placeholders.put("count", String.valueOf(histogram.getCount()));
+            player.sendMessage(plugin.getMessageManager().getMessage("stats.stage", placeholders));
+        }
+
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("chat_rate", String.format("%.2f", statistics.getChatMessagesPerSecond()));
+        placeholders.put("private_rate", String.format("%.2f", statistics.getPrivateMessagesPerSecond()));
+        player.sendMessage(plugin.getMessageManager().getMessage("stats.rate", placeholders));
+    }
+
     private void listFormats(Player player) {
         Collection<ChatFormat> formats = plugin.getFormatManager().getFormats();
         
@@ -148,6 +197,10 @@ public class GianChatCommand implements CommandExecutor, TabCompleter {
                 }
             }
         } else if (args.length == 2) {
+            if (args[0].equalsIgnoreCase("stats") && sender.hasPermission("gianchat.commands.stats")) {
+                completions.add("reset");
+            }
+
             // Second argument - format names for test command
             if (args[0].equalsIgnoreCase("test") && sender.hasPermission("gianchat.commands.test")) {
                 Collection<ChatFormat> formats = plugin.getFormatManager().getFormats();
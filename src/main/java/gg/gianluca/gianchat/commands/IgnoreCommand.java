@@ -3,6 +3,7 @@ package gg.gianluca.gianchat.commands;
 import gg.gianluca.gianchat.GianChat;
 import gg.gianluca.gianchat.events.GianChatPlayerIgnoreEvent;
 import gg.gianluca.gianchat.messaging.PrivateMessageManager;
+import gg.gianluca.gianchat.players.PlayerNames;
 import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -45,7 +46,7 @@ public class IgnoreCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        Player target = Bukkit.getPlayer(args[0]);
+        Player target = plugin.getPlayerNames().findPlayer(args[0]);
         if (target == null) {
             Map<String, String> placeholders = new HashMap<>();
             placeholders.put("player", args[0]);
@@ -98,10 +99,9 @@ public class IgnoreCommand implements CommandExecutor, TabCompleter {
         }
 
         if (args.length == 1) {
-            return Bukkit.getOnlinePlayers().stream()
-                .filter(p -> p != player)
-                .map(Player::getName)
-                .filter(name -> name.toLowerCase().startsWith(args[0].toLowerCase()))
+            return plugin.getPlayerNames().complete(args[0]).stream()
+                .filter(names -> !names.uuid().equals(player.getUniqueId()))
+                .map(PlayerNames::name)
                 .collect(Collectors.toList());
         }
 
@@ -0,0 +1,67 @@
+package gg.gianluca.gianchat.commands;
+
+import gg.gianluca.gianchat.GianChat;
+import gg.gianluca.gianchat.messaging.mail.MailManager;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MailCommand implements CommandExecutor, TabCompleter {
+    private final GianChat plugin;
+    private final MailManager mail;
+
+    public MailCommand(GianChat plugin, MailManager mail) {
+        this.plugin = plugin;
+        this.mail = mail;
+    }
+
+    @Override
+    public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, String[] args) {
+        if (!(sender instanceof Player player)) {
+            sender.sendMessage(plugin.getMessageManager().getMessage("error.player_only"));
+            return true;
+        }
+
+        if (!sender.hasPermission("gianchat.commands.mail")) {
+            sender.sendMessage(plugin.getMessageManager().getMessage("error.no_permission"));
+            return true;
+        }
+
+        if (args.length == 0) {
+            mail.showPage(player, 1);
+            return true;
+        }
+
+        if (args.length == 1 && args[0].equalsIgnoreCase("clear")) {
+            mail.clear(player);
+            sender.sendMessage(plugin.getMessageManager().getMessage("mail.cleared"));
+            return true;
+        }
+
+        try {
+            mail.showPage(player, Integer.parseInt(args[0]));
+        } catch (NumberFormatException e) {
+            Map<String, String> placeholders = new HashMap<>();
+            placeholders.put("usage", "/" + label + " [page|clear]");
+            sender.sendMessage(plugin.getMessageManager().getMessage("error.invalid_usage", placeholders));
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String alias, String[] args) {
+        List<String> completions = new ArrayList<>();
+        if (args.length == 1 && sender.hasPermission("gianchat.commands.mail") && "clear".startsWith(args[0].toLowerCase())) {
+            completions.add("clear");
+        }
+        return completions;
+    }
+}
@@ -2,7 +2,9 @@ package gg.gianluca.gianchat.commands;
 
 import gg.gianluca.gianchat.GianChat;
 import gg.gianluca.gianchat.messaging.PrivateMessageManager;
+import gg.gianluca.gianchat.players.PlayerNames;
 import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -52,8 +54,15 @@ public class MessageCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        Player target = Bukkit.getPlayer(args[0]);
+        Player target = plugin.getPlayerNames().findPlayer(args[0]);
         if (target == null) {
+            // Offline players get the message when they join
+            OfflinePlayer offline = plugin.getPlayerNames().findKnown(args[0]);
+            if (offline != null && !offline.getUniqueId().equals(player.getUniqueId())) {
+                privateMessageManager.sendOfflineMessage(player, offline, joinMessage(args));
+                return true;
+            }
+
             Map<String, String> placeholders = new HashMap<>();
             placeholders.put("player", args[0]);
             sender.sendMessage(plugin.getMessageManager().getMessage("error.player_not_found", placeholders));
@@ -72,14 +81,16 @@ public class MessageCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
+        privateMessageManager.sendPrivateMessage(player, target, joinMessage(args));
+        return true;
+    }
+
+    private static String joinMessage(String[] args) {
         StringBuilder messageBuilder = new StringBuilder();
         for (int i = 1; i < args.length; i++) {
             messageBuilder.append(args[i]).append(" ");
         }
-        String message = messageBuilder.toString().trim();
-
-        privateMessageManager.sendPrivateMessage(player, target, message);
-        return true;
+        return messageBuilder.toString().trim();
     }
 
     @Override
@@ -92,21 +103,20 @@ public class MessageCommand implements CommandExecutor, TabCompleter {
 
         if (args.length == 1) {
             // First argument - online players who haven't ignored the sender
-            completions.addAll(
-                Bukkit.getOnlinePlayers().stream()
-                    .filter(p -> p != player && 
-                               !privateMessageManager.hasPlayerIgnored(p, player) &&
-                               privateMessageManager.hasMessagesEnabled(p))
-                    .map(Player::getName)
-                    .filter(name -> name.toLowerCase().startsWith(args[0].toLowerCase()))
-                    .collect(Collectors.toList())
-            );
+            for (PlayerNames names : plugin.getPlayerNames().complete(args[0])) {
+                Player p = Bukkit.getPlayer(names.uuid());
+                if (p != null && p != player &&
+                    !privateMessageManager.hasPlayerIgnored(p, player) &&
+                    privateMessageManager.hasMessagesEnabled(p)) {
+                    completions.add(names.name());
+                }
+            }
         } else if (args.length == 2) {
             // Second argument - common messages and last message to player if exists
             completions.addAll(COMMON_MESSAGES);
             
             // Add the last message sent to this player if it exists
-            Player target = Bukkit.getPlayer(args[0]);
+            Player target = plugin.getPlayerNames().findPlayer(args[0]);
             if (target != null) {
                 Player lastMessager = privateMessageManager.getLastMessager(target);
                 if (lastMessager != null && lastMessager.equals(sender)) {
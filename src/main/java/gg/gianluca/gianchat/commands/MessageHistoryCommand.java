@@ -0,0 +1,118 @@
+package gg.gianluca.gianchat.commands;
+
+import gg.gianluca.gianchat.GianChat;
+import gg.gianluca.gianchat.messaging.history.ConversationStore;
+import gg.gianluca.gianchat.messaging.history.HistoryEntry;
+import gg.gianluca.gianchat.players.PlayerNames;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+public class MessageHistoryCommand implements CommandExecutor, TabCompleter {
+    private final GianChat plugin;
+    private final ConversationStore history;
+
+    public MessageHistoryCommand(GianChat plugin, ConversationStore history) {
+        this.plugin = plugin;
+        this.history = history;
+    }
+
+    @Override
+    public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, String[] args) {
+        if (!(sender instanceof Player player)) {
+            sender.sendMessage(plugin.getMessageManager().getMessage("error.player_only"));
+            return true;
+        }
+
+        if (!sender.hasPermission("gianchat.commands.msghistory")) {
+            sender.sendMessage(plugin.getMessageManager().getMessage("error.no_permission"));
+            return true;
+        }
+
+        if (!history.isEnabled()) {
+            sender.sendMessage(plugin.getMessageManager().getMessage("history.disabled"));
+            return true;
+        }
+
+        if (args.length < 1 || args.length > 2) {
+            Map<String, String> placeholders = new HashMap<>();
+            placeholders.put("usage", "/" + label + " <player> [page]");
+            sender.sendMessage(plugin.getMessageManager().getMessage("error.invalid_usage", placeholders));
+            return true;
+        }
+
+        int page = 1;
+        if (args.length == 2) {
+            try {
+                page = Math.max(1, Integer.parseInt(args[1]));
+            } catch (NumberFormatException e) {
+                Map<String, String> placeholders = new HashMap<>();
+                placeholders.put("usage", "/" + label + " <player> [page]");
+                sender.sendMessage(plugin.getMessageManager().getMessage("error.invalid_usage", placeholders));
+                return true;
+            }
+        }
+
+        // The other player doesn't have to be online anymore
+        OfflinePlayer target = plugin.getPlayerNames().findKnown(args[0]);
+        if (target == null) {
+            Map<String, String> placeholders = new HashMap<>();
+            placeholders.put("player", args[0]);
+            sender.sendMessage(plugin.getMessageManager().getMessage("error.player_not_found", placeholders));
+            return true;
+        }
+        UUID other = target.getUniqueId();
+        String otherName = target.getName() != null ? target.getName() : args[0];
+
+        int shownPage = page;
+        history.getPage(player.getUniqueId(), other, page - 1, entries -> {
+            Map<String, String> placeholders = new HashMap<>();
+            placeholders.put("player", otherName);
+            placeholders.put("page", String.valueOf(shownPage));
+            placeholders.put("next_page", String.valueOf(shownPage + 1));
+
+            if (entries.isEmpty()) {
+                player.sendMessage(plugin.getMessageManager().getMessage("history.empty", placeholders));
+                return;
+            }
+
+            player.sendMessage(plugin.getMessageManager().getMessage("history.header", placeholders));
+            // Pages are newest first, the chat reads oldest first
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                HistoryEntry entry = entries.get(i);
+                player.sendMessage(history.render(entry));
+            }
+            if (entries.size() == history.getPageSize()) {
+                player.sendMessage(plugin.getMessageManager().getMessage("history.footer", placeholders));
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String alias, String[] args) {
+        if (!(sender instanceof Player player) || !sender.hasPermission("gianchat.commands.msghistory")) {
+            return new ArrayList<>();
+        }
+
+        if (args.length == 1) {
+            return plugin.getPlayerNames().complete(args[0]).stream()
+                .filter(names -> !names.uuid().equals(player.getUniqueId()))
+                .map(PlayerNames::name)
+                .collect(Collectors.toList());
+        }
+
+        return new ArrayList<>();
+    }
+}
@@ -2,13 +2,23 @@ package gg.gianluca.gianchat.commands;
 
 import gg.gianluca.gianchat.GianChat;
 import gg.gianluca.gianchat.messaging.PrivateMessageManager;
+import gg.gianluca.gianchat.players.PlayerNames;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
-public class SocialSpyCommand implements CommandExecutor {
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class SocialSpyCommand implements CommandExecutor, TabCompleter {
+    private static final List<String> SUBCOMMANDS = List.of("watch", "unwatch", "clear", "staff", "keywords");
+
     private final GianChat plugin;
     private final PrivateMessageManager privateMessageManager;
 
@@ -29,8 +39,85 @@ public class SocialSpyCommand implements CommandExecutor {
             return true;
         }
 
-        boolean enabled = privateMessageManager.toggleSocialSpy(player);
-        sender.sendMessage(plugin.getMessageManager().getMessage(enabled ? "social_spy.enabled" : "social_spy.disabled"));
+        if (args.length == 0) {
+            boolean enabled = privateMessageManager.toggleSocialSpy(player);
+            sender.sendMessage(plugin.getMessageManager().getMessage(enabled ? "social_spy.enabled" : "social_spy.disabled"));
+            return true;
+        }
+
+        switch (args[0].toLowerCase()) {
+            case "watch", "unwatch" -> handleWatchCommand(player, label, args);
+            case "clear" -> {
+                privateMessageManager.updateSocialSpyFilters(player, data -> data.getSpyWatchedPlayers().clear());
+                sender.sendMessage(plugin.getMessageManager().getMessage("social_spy.watch_cleared"));
+            }
+            case "staff" -> {
+                boolean excluded = !plugin.getDataManager().getPlayerData(player).isSpyExcludingStaff();
+                privateMessageManager.updateSocialSpyFilters(player, data -> data.setSpyExcludingStaff(excluded));
+                sender.sendMessage(plugin.getMessageManager().getMessage(
+                    excluded ? "social_spy.staff_excluded" : "social_spy.staff_included"));
+            }
+            case "keywords" -> {
+                boolean enabled = !plugin.getDataManager().getPlayerData(player).isSpyKeywordsEnabled();
+                privateMessageManager.updateSocialSpyFilters(player, data -> data.setSpyKeywordsEnabled(enabled));
+                sender.sendMessage(plugin.getMessageManager().getMessage(
+                    enabled ? "social_spy.keywords_enabled" : "social_spy.keywords_disabled"));
+            }
+            default -> {
+                Map<String, String> placeholders = new HashMap<>();
+                placeholders.put("usage", "/" + label + " [watch|unwatch <player>|clear|staff|keywords]");
+                sender.sendMessage(plugin.getMessageManager().getMessage("error.invalid_usage", placeholders));
+            }
+        }
         return true;
     }
-} 
\ No newline at end of file
+
+    private void handleWatchCommand(Player player, String label, String[] args) {
+        boolean watch = args[0].equalsIgnoreCase("watch");
+        if (args.length != 2) {
+            Map<String, String> placeholders = new HashMap<>();
+            placeholders.put("usage", "/" + label + " " + args[0].toLowerCase() + " <player>");
+            player.sendMessage(plugin.getMessageManager().getMessage("error.invalid_usage", placeholders));
+            return;
+        }
+
+        PlayerNames target = plugin.getPlayerNames().find(args[1]);
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("player", target != null ? target.name() : args[1]);
+        if (target == null) {
+            player.sendMessage(plugin.getMessageManager().getMessage("error.player_not_found", placeholders));
+            return;
+        }
+
+        privateMessageManager.updateSocialSpyFilters(player, data -> {
+            if (watch) {
+                data.getSpyWatchedPlayers().add(target.uuid());
+            } else {
+                data.getSpyWatchedPlayers().remove(target.uuid());
+            }
+        });
+        player.sendMessage(plugin.getMessageManager().getMessage(
+            watch ? "social_spy.watching" : "social_spy.unwatched", placeholders));
+    }
+
+    @Override
+    public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String alias, String[] args) {
+        if (!(sender instanceof Player) || !sender.hasPermission("gianchat.commands.socialspy")) {
+            return new ArrayList<>();
+        }
+
+        if (args.length == 1) {
+            return SUBCOMMANDS.stream()
+                .filter(subcommand -> subcommand.startsWith(args[0].toLowerCase()))
+                .collect(Collectors.toList());
+        }
+
+        if (args.length == 2 && (args[0].equalsIgnoreCase("watch") || args[0].equalsIgnoreCase("unwatch"))) {
+            return plugin.getPlayerNames().complete(args[1]).stream()
+                .map(PlayerNames::name)
+                .collect(Collectors.toList());
+        }
+
+        return new ArrayList<>();
+    }
+}
@@ -0,0 +1,365 @@
+package gg.gianluca.gianchat.data;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * A set of UUIDs stored as pairs of longs instead of boxed UUIDs in hash nodes.
+ * Small sets are a sorted array searched with binary search, sets larger than
+ * {@link #SORTED_LIMIT} switch to an open-addressing hash table with linear probing.
+ * UUID objects are only created while iterating. Not thread safe, like the HashSet it replaces.
+ */
+public class CompactUuidSet extends AbstractSet<UUID> {
+    static final int SORTED_LIMIT = 32;
+    private static final long[] EMPTY = new long[0];
+
+    // Sorted: pairs [0, size) ordered by (most, least). Hashed: a slot per pair, (0, 0) marks an empty slot
+    private long[] entries;
+    private int size;
+    private boolean hashed;
+    // The nil UUID can't be stored in a hashed slot since it looks empty
+    private boolean containsNil;
+
+    public CompactUuidSet() {
+        this.entries = EMPTY;
+    }
+
+    public CompactUuidSet(Collection<UUID> uuids) {
+        this();
+        addAll(uuids);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof UUID uuid)) {
+            return false;
+        }
+        return contains(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public boolean contains(long most, long least) {
+        if (!hashed) {
+            return search(most, least) >= 0;
+        }
+        if (most == 0 && least == 0) {
+            return containsNil;
+        }
+        return findSlot(most, least) >= 0;
+    }
+
+    @Override
+    public boolean add(UUID uuid) {
+        return add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public boolean add(long most, long least) {
+        if (!hashed) {
+            int index = search(most, least);
+            if (index >= 0) {
+                return false;
+            }
+            if (size == SORTED_LIMIT) {
+                rehash(tableSize(SORTED_LIMIT + 1));
+                return add(most, least);
+            }
+
+            int insert = -index - 1;
+            if (size * 2 == entries.length) {
+                entries = Arrays.copyOf(entries, Math.max(8, entries.length * 2));
+            }
+            System.arraycopy(entries, insert * 2, entries, insert * 2 + 2, (size - insert) * 2);
+            entries[insert * 2] = most;
+            entries[insert * 2 + 1] = least;
+            size++;
+            return true;
+        }
+
+        if (most == 0 && least == 0) {
+            if (containsNil) {
+                return false;
+            }
+            containsNil = true;
+            size++;
+            return true;
+        }
+
+        int mask = slots() - 1;
+        int slot = hash(most, least) & mask;
+        while (!isEmpty(slot)) {
+            if (entries[slot * 2] == most && entries[slot * 2 + 1] == least) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        entries[slot * 2] = most;
+        entries[slot * 2 + 1] = least;
+        size++;
+
+        // Keep the table at most three quarters full
+        if (size * 4 > slots() * 3) {
+            rehash(slots() * 2);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof UUID uuid)) {
+            return false;
+        }
+        return remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public boolean remove(long most, long least) {
+        if (!hashed) {
+            int index = search(most, least);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(entries, index * 2 + 2, entries, index * 2, (size - index - 1) * 2);
+            size--;
+            return true;
+        }
+
+        if (most == 0 && least == 0) {
+            if (!containsNil) {
+                return false;
+            }
+            containsNil = false;
+        } else {
+            int slot = findSlot(most, least);
+            if (slot < 0) {
+                return false;
+            }
+            deleteSlot(slot);
+        }
+        size--;
+
+        if (size <= SORTED_LIMIT / 2) {
+            toSorted();
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        entries = EMPTY;
+        size = 0;
+        hashed = false;
+        containsNil = false;
+    }
+
+    @Override
+    public Iterator<UUID> iterator() {
+        return hashed ? new HashedIterator() : new SortedIterator();
+    }
+
+    private int search(long most, long least) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(entries[mid * 2], entries[mid * 2 + 1], most, least);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int compare(long mostA, long leastA, long mostB, long leastB) {
+        int cmp = Long.compare(mostA, mostB);
+        return cmp != 0 ? cmp : Long.compare(leastA, leastB);
+    }
+
+    private int slots() {
+        return entries.length / 2;
+    }
+
+    private boolean isEmpty(int slot) {
+        return entries[slot * 2] == 0 && entries[slot * 2 + 1] == 0;
+    }
+
+    private int findSlot(long most, long least) {
+        int mask = slots() - 1;
+        int slot = hash(most, least) & mask;
+        while (!isEmpty(slot)) {
+            if (entries[slot * 2] == most && entries[slot * 2 + 1] == least) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Empties a slot and shifts later entries of the same probe run back, so no tombstones are needed.
+     */
+    private void deleteSlot(int slot) {
+        int mask = slots() - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (!isEmpty(next)) {
+            int home = hash(entries[next * 2], entries[next * 2 + 1]) & mask;
+            // Move the entry into the hole unless its home lies cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                entries[hole * 2] = entries[next * 2];
+                entries[hole * 2 + 1] = entries[next * 2 + 1];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        entries[hole * 2] = 0;
+        entries[hole * 2 + 1] = 0;
+    }
+
+    /**
+     * Returns the smallest power of two number of slots that holds the entries at most three quarters full.
+     */
+    private static int tableSize(int entries) {
+        int slots = Integer.highestOneBit(Math.max(1, entries * 4 / 3));
+        while (entries * 4 > slots * 3) {
+            slots <<= 1;
+        }
+        return slots;
+    }
+
+    private static int hash(long most, long least) {
+        long h = most * 0x9E3779B97F4A7C15L ^ least;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private void rehash(int slots) {
+        long[] old = entries;
+        boolean wasHashed = hashed;
+        int count = wasHashed ? old.length / 2 : size;
+
+        entries = new long[slots * 2];
+        size = containsNil ? 1 : 0;
+        hashed = true;
+        for (int i = 0; i < count; i++) {
+            long most = old[i * 2];
+            long least = old[i * 2 + 1];
+            if (wasHashed && most == 0 && least == 0) {
+                continue;
+            }
+            add(most, least);
+        }
+    }
+
+    private void toSorted() {
+        long[] old = entries;
+        boolean nil = containsNil;
+
+        entries = new long[Math.max(8, size * 2)];
+        size = 0;
+        hashed = false;
+        containsNil = false;
+        if (nil) {
+            add(0, 0);
+        }
+        for (int i = 0; i < old.length / 2; i++) {
+            long most = old[i * 2];
+            long least = old[i * 2 + 1];
+            if (most != 0 || least != 0) {
+                add(most, least);
+            }
+        }
+    }
+
+    private class SortedIterator implements Iterator<UUID> {
+        private int next;
+        private boolean removable;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public UUID next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            UUID uuid = new UUID(entries[next * 2], entries[next * 2 + 1]);
+            next++;
+            removable = true;
+            return uuid;
+        }
+
+        @Override
+        public void remove() {
+            if (!removable) {
+                throw new IllegalStateException();
+            }
+            next--;
+            CompactUuidSet.this.remove(entries[next * 2], entries[next * 2 + 1]);
+            removable = false;
+        }
+    }
+
+    /**
+     * Walks a copy of the table, since removing shifts entries around and may switch back to sorted.
+     */
+    private class HashedIterator implements Iterator<UUID> {
+        private final long[] table = entries.clone();
+        private boolean nil = containsNil;
+        private int slot = -1;
+        private UUID last;
+
+        private HashedIterator() {
+            advance();
+        }
+
+        private void advance() {
+            do {
+                slot++;
+            } while (slot < table.length / 2 && table[slot * 2] == 0 && table[slot * 2 + 1] == 0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nil || slot < table.length / 2;
+        }
+
+        @Override
+        public UUID next() {
+            if (nil) {
+                nil = false;
+                last = new UUID(0, 0);
+                return last;
+            }
+            if (slot >= table.length / 2) {
+                throw new NoSuchElementException();
+            }
+            last = new UUID(table[slot * 2], table[slot * 2 + 1]);
+            advance();
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            CompactUuidSet.this.remove(last);
+            last = null;
+        }
+    }
+}
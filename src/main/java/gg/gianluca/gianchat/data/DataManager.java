@@ -1,30 +1,71 @@
 package gg.gianluca.gianchat.data;
 
 import gg.gianluca.gianchat.GianChat;
-import org.bukkit.configuration.file.YamlConfiguration;
+import gg.gianluca.gianchat.data.storage.PlayerStorage;
+import gg.gianluca.gianchat.data.storage.SqlitePlayerStorage;
+import gg.gianluca.gianchat.data.storage.YamlMigrator;
+import gg.gianluca.gianchat.data.storage.YamlPlayerStorage;
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitTask;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
+/**
+ * Keeps the data of online players, or of every stored player when the storage
+ * keeps them all in memory. Changed players are queued and their data is copied
+ * on the main thread, then written to the storage on a background thread so no
+ * save touches the disk on the main thread.
+ *
+ * Without the journal, changes are written once per save interval. With the
+ * journal, changes are appended to it every commit interval and only written to
+ * the storage when the journal is compacted.
+ */
 public class DataManager {
+    private static final long PRELOAD_TIMEOUT = TimeUnit.MINUTES.toMillis(2);
+
     private final GianChat plugin;
     private final Map<UUID, PlayerData> playerData;
     private final File dataFolder;
-    private final File dataFile;
-    private YamlConfiguration config;
-    private BukkitTask autoSaveTask;
+    // Players changed since the last flush
+    private final Set<UUID> dirty;
+    private final Consumer<UUID> dirtyQueue;
+    // Latest snapshot of each player waiting for the writer, applied together by a single write
+    private final Map<UUID, PlayerSnapshot> pending;
+    private final AtomicBoolean writeScheduled;
+    // Players loaded by their login who haven't joined yet
+    private final Map<UUID, PreloadedData> preloaded;
+    private final PlayerDataJournal journal;
+    // Only used by the writer thread once the data is loaded
+    private PlayerStorage storage;
+    private ExecutorService writer;
+    private BukkitTask flushTask;
 
     public DataManager(GianChat plugin) {
         this.plugin = plugin;
-        this.playerData = new HashMap<>();
+        this.playerData = new ConcurrentHashMap<>();
         this.dataFolder = new File(plugin.getDataFolder(), "data");
-        this.dataFile = new File(dataFolder, "playerdata.yml");
+        this.dirty = ConcurrentHashMap.newKeySet();
+        this.dirtyQueue = dirty::add;
+        this.pending = new ConcurrentHashMap<>();
+        this.writeScheduled = new AtomicBoolean();
+        this.preloaded = new ConcurrentHashMap<>();
+        this.journal = new PlayerDataJournal(plugin, new File(dataFolder, "journal"), this::compact);
         ensureDirectoryExists();
     }
 
@@ -35,118 +76,216 @@ public class DataManager {
     }
 
     public void loadData() {
-        // Create data file if it doesn't exist
-        if (!dataFile.exists()) {
-            try {
-                dataFile.createNewFile();
-            } catch (IOException e) {
-                plugin.getLogger().severe("Failed to create playerdata.yml: " + e.getMessage());
-                return;
+        File yamlFile = new File(dataFolder, "playerdata.yml");
+        // Applies after a restart
+        String type = plugin.getConfig().getString("data.storage", "yaml");
+        if (type.equalsIgnoreCase("sqlite")) {
+            storage = new SqlitePlayerStorage(plugin, new File(dataFolder, "playerdata.db"));
+            if (storage.open()) {
+                YamlMigrator.migrate(plugin, yamlFile, storage);
+            } else {
+                plugin.getLogger().severe("Falling back to playerdata.yml");
+                storage = null;
             }
+        } else if (!type.equalsIgnoreCase("yaml")) {
+            plugin.getLogger().warning("Unknown data storage '" + type + "', using yaml");
+        }
+        if (storage == null) {
+            storage = new YamlPlayerStorage(plugin, yamlFile);
+            storage.open();
         }
 
-        // Load configuration
-        config = YamlConfiguration.loadConfiguration(dataFile);
-
-        // Load player data
-        if (config.contains("players")) {
-            for (String uuidStr : config.getConfigurationSection("players").getKeys(false)) {
-                try {
-                    UUID uuid = UUID.fromString(uuidStr);
-                    PlayerData data = new PlayerData();
-                    
-                    String path = "players." + uuidStr + ".";
-                    data.setMessagesEnabled(config.getBoolean(path + "messages-enabled", true));
-                    data.setSocialSpyEnabled(config.getBoolean(path + "social-spy-enabled", false));
-                    
-                    // Load ignored players
-                    if (config.contains(path + "ignored-players")) {
-                        data.setIgnoredPlayers(config.getStringList(path + "ignored-players").stream()
-                            .map(UUID::fromString)
-                            .collect(Collectors.toSet()));
-                    }
-                    
-                    // Load last messager
-                    String lastMessagerStr = config.getString(path + "last-messager");
-                    if (lastMessagerStr != null) {
-                        data.setLastMessager(UUID.fromString(lastMessagerStr));
-                    }
-                    
-                    playerData.put(uuid, data);
-                } catch (IllegalArgumentException e) {
-                    plugin.getLogger().warning("Invalid UUID in playerdata.yml: " + uuidStr);
-                }
+        // Changes made after the storage was last written
+        Map<UUID, PlayerSnapshot> replayed = journal.replay();
+        if (!replayed.isEmpty()) {
+            boolean saved = storage.save(replayed.values());
+            if (!saved) {
+                // Written with the next compaction, the journal is kept until then
+                pending.putAll(replayed);
             }
+            journal.compacted(journal.getLastGeneration(), saved);
+            plugin.getLogger().info("Recovered " + replayed.size() + " players from the player data journal");
         }
 
-        startAutoSave();
-    }
-
-    public void saveData() {
-        if (config == null) {
-            config = new YamlConfiguration();
+        for (PlayerSnapshot snapshot : storage.loadAll().values()) {
+            playerData.put(snapshot.uuid(), createPlayerData(snapshot.uuid(), snapshot));
         }
 
-        // Clear existing data
-        config.set("players", null);
-
-        // Save player data
-        for (Map.Entry<UUID, PlayerData> entry : playerData.entrySet()) {
-            String path = "players." + entry.getKey().toString() + ".";
-            PlayerData data = entry.getValue();
-
-            config.set(path + "messages-enabled", data.isMessagesEnabled());
-            config.set(path + "social-spy-enabled", data.isSocialSpyEnabled());
-            
-            // Save ignored players
-            config.set(path + "ignored-players", 
-                data.getIgnoredPlayers().stream()
-                    .map(UUID::toString)
-                    .collect(Collectors.toList()));
-            
-            // Save last messager
-            if (data.getLastMessager() != null) {
-                config.set(path + "last-messager", data.getLastMessager().toString());
+        // Players already online when the plugin is enabled didn't go through the login
+        if (storage.loadsOnJoin()) {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                try {
+                    UUID uuid = player.getUniqueId();
+                    playerData.put(uuid, createPlayerData(uuid, storage.load(uuid)));
+                } catch (IOException e) {
+                    plugin.getLogger().severe("Failed to load the data of " + player.getName() + ": " + e.getMessage());
+                }
             }
         }
+    }
 
-        // Save to file
-        try {
-            config.save(dataFile);
-        } catch (IOException e) {
-            plugin.getLogger().severe("Failed to save playerdata.yml: " + e.getMessage());
+    public void start() {
+        if (writer == null) {
+            writer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "GianChat Data Writer");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
+        // Applies after a restart
+        if (plugin.getConfig().getBoolean("data.journal.enabled", true)) {
+            journal.start();
+        }
+        loadConfig();
     }
 
-    public void startAutoSave() {
+    public void loadConfig() {
         // Cancel existing task if any
-        if (autoSaveTask != null) {
-            autoSaveTask.cancel();
+        if (flushTask != null) {
+            flushTask.cancel();
         }
 
-        // Get auto-save interval from config (in minutes)
-        int intervalMinutes = plugin.getConfig().getInt("auto-save-interval", 5);
-        long intervalTicks = intervalMinutes * 60L * 20L; // Convert minutes to ticks
+        journal.setCompactSize(plugin.getConfig().getLong("data.journal.compact-size", 4096) * 1024);
 
-        // Start new auto-save task
-        autoSaveTask = plugin.getServer().getScheduler().runTaskTimer(
+        // How often changed players are written, in ticks with the journal and in seconds without
+        long intervalTicks = journal.isStarted()
+            ? Math.max(1, plugin.getConfig().getLong("data.journal.commit-interval", 1))
+            : Math.max(1, plugin.getConfig().getLong("data.save-interval", 5)) * 20L;
+        flushTask = plugin.getServer().getScheduler().runTaskTimer(
             plugin,
-            this::saveData,
+            this::flush,
             intervalTicks,
             intervalTicks
         );
     }
 
+    /**
+     * Writes every pending change and stops the writer thread.
+     */
     public void cleanup() {
-        if (autoSaveTask != null) {
-            autoSaveTask.cancel();
-            autoSaveTask = null;
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        flush();
+        // Sealing the journal queues its compaction on the writer
+        journal.stop();
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out writing player data, recent changes may be lost");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        if (storage != null) {
+            storage.close();
         }
-        saveData();
     }
 
+    /**
+     * Copies the data of every changed player and hands it to the writer thread.
+     * Must be called on the main thread, where player data is changed.
+     */
+    public void flush() {
+        expirePreloaded();
+        // Snapshots that failed to be written are still pending
+        if (storage == null || dirty.isEmpty() && pending.isEmpty()) {
+            return;
+        }
+
+        List<PlayerSnapshot> snapshots = new ArrayList<>(dirty.size());
+        for (Iterator<UUID> iterator = dirty.iterator(); iterator.hasNext(); ) {
+            UUID uuid = iterator.next();
+            iterator.remove();
+            PlayerData data = playerData.get(uuid);
+            if (data != null) {
+                data.clearDirty();
+                PlayerSnapshot snapshot = PlayerSnapshot.of(uuid, data);
+                pending.put(uuid, snapshot);
+                snapshots.add(snapshot);
+            }
+        }
+
+        if (journal.isStarted()) {
+            journal.append(snapshots);
+            return;
+        }
+
+        // A write that hasn't started yet picks up the new snapshots as well
+        if (writer != null && writeScheduled.compareAndSet(false, true)) {
+            writer.execute(this::write);
+        }
+    }
+
+    private void write() {
+        writeScheduled.set(false);
+        saveFile();
+    }
+
+    /**
+     * Called on the journal thread once a generation is sealed. Every change it holds is
+     * already pending, so writing them to the storage makes it and the ones before it redundant.
+     */
+    private void compact(int generation) {
+        if (writer == null) {
+            journal.compacted(generation, false);
+            return;
+        }
+        writer.execute(() -> journal.compacted(generation, saveFile()));
+    }
+
+    private boolean saveFile() {
+        List<PlayerSnapshot> snapshots = new ArrayList<>(pending.size());
+        for (UUID uuid : pending.keySet()) {
+            PlayerSnapshot snapshot = pending.remove(uuid);
+            if (snapshot != null) {
+                snapshots.add(snapshot);
+            }
+        }
+        if (storage.save(snapshots)) {
+            return true;
+        }
+
+        // Try again with the next write, unless the player changed again since
+        for (PlayerSnapshot snapshot : snapshots) {
+            pending.putIfAbsent(snapshot.uuid(), snapshot);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the data of a player. When the storage loads players on join, a player who
+     * isn't loaded, like one who already quit, gets detached defaults that are never saved,
+     * so they can't overwrite the stored data.
+     */
     public PlayerData getPlayerData(Player player) {
-        return playerData.computeIfAbsent(player.getUniqueId(), k -> new PlayerData());
+        PlayerData data = playerData.get(player.getUniqueId());
+        if (data != null) {
+            return data;
+        }
+        if (storage != null && storage.loadsOnJoin()) {
+            return new PlayerData();
+        }
+        return playerData.computeIfAbsent(player.getUniqueId(), uuid -> createPlayerData(uuid, null));
+    }
+
+    private PlayerData createPlayerData(UUID uuid, PlayerSnapshot snapshot) {
+        PlayerData data = snapshot != null ? snapshot.toPlayerData() : new PlayerData();
+        data.attach(uuid, dirtyQueue);
+        return data;
+    }
+
+    /**
+     * Returns the data of a player who may be offline, or null if they have none or
+     * the storage only keeps online players in memory.
+     */
+    public PlayerData getStoredPlayerData(UUID uuid) {
+        return playerData.get(uuid);
     }
 
     public void removePlayerData(Player player) {
@@ -154,88 +293,127 @@ public class DataManager {
         playerData.remove(uuid);
     }
 
-    public void loadPlayerData(Player player) {
-        UUID uuid = player.getUniqueId();
-        if (!playerData.containsKey(uuid)) {
-            playerData.put(uuid, new PlayerData());
-        }
-        
-        PlayerData data = playerData.get(uuid);
-        String path = "players." + uuid;
-        
-        if (config.contains(path)) {
-            data.setFormat(config.getString(path + ".format"));
-            data.setMessagesEnabled(config.getBoolean(path + ".messages-enabled", true));
-            data.setSocialSpyEnabled(config.getBoolean(path + ".social-spy", false));
-            data.setMentionsEnabled(config.getBoolean(path + ".mentions-enabled", true));
-            
-            if (config.contains(path + ".last-messager")) {
-                data.setLastMessager(UUID.fromString(config.getString(path + ".last-messager")));
-            }
-            
-            if (config.contains(path + ".ignored-players")) {
-                for (String ignoredUUID : config.getStringList(path + ".ignored-players")) {
-                    data.getIgnoredPlayers().add(UUID.fromString(ignoredUUID));
-                }
-            }
+    /**
+     * Loads a player who is logging in, called on the login thread. Waits for the writer
+     * thread, which also has the changes not written to the storage yet. The data is kept
+     * aside until the player joins, an earlier session of the same player may still be
+     * online. Returns false if the data couldn't be loaded.
+     */
+    public boolean preloadPlayerData(UUID uuid) {
+        if (!storage.loadsOnJoin() || writer == null) {
+            return true;
+        }
+
+        PlayerSnapshot snapshot;
+        try {
+            snapshot = loadSnapshot(uuid);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to load the data of " + uuid + ": " + e.getMessage());
+            return false;
         }
+        preloaded.put(uuid, new PreloadedData(createPlayerData(uuid, snapshot), System.currentTimeMillis()));
+        return true;
     }
 
-    public void savePlayerData(Player player) {
+    /**
+     * Drops the data loaded for a login that was denied afterwards.
+     */
+    public void discardPreloadedPlayerData(UUID uuid) {
+        preloaded.remove(uuid);
+    }
+
+    /**
+     * Installs the data of a joining player. Players whose login wasn't preloaded are
+     * loaded now, only players the storage has nothing for get the defaults. A player
+     * whose data can't be loaded is kicked, so the defaults never overwrite it.
+     */
+    public void loadPlayerData(Player player) {
         UUID uuid = player.getUniqueId();
-        PlayerData data = playerData.get(uuid);
-        if (data == null) return;
-        
-        String path = "players." + uuid;
-        config.set(path + ".format", data.getFormat());
-        config.set(path + ".messages-enabled", data.isMessagesEnabled());
-        config.set(path + ".social-spy", data.isSocialSpyEnabled());
-        config.set(path + ".mentions-enabled", data.hasMentionsEnabled());
-        
-        if (data.getLastMessager() != null) {
-            config.set(path + ".last-messager", data.getLastMessager().toString());
-        }
-        
-        if (!data.getIgnoredPlayers().isEmpty()) {
-            config.set(path + ".ignored-players", 
-                data.getIgnoredPlayers().stream()
-                    .map(UUID::toString)
-                    .toList());
-        }
-        
+        if (!storage.loadsOnJoin()) {
+            playerData.computeIfAbsent(uuid, key -> createPlayerData(key, null));
+            return;
+        }
+
+        PreloadedData loaded = preloaded.remove(uuid);
+        if (loaded != null) {
+            playerData.put(uuid, loaded.data());
+            return;
+        }
+        if (playerData.containsKey(uuid)) {
+            return;
+        }
+
         try {
-            config.save(dataFile);
+            playerData.put(uuid, createPlayerData(uuid, loadSnapshot(uuid)));
         } catch (IOException e) {
-            plugin.getLogger().severe("Could not save data for player " + player.getName() + ": " + e.getMessage());
-        }
-    }
-
-    public void saveAllData() {
-        for (Map.Entry<UUID, PlayerData> entry : playerData.entrySet()) {
-            String path = "players." + entry.getKey();
-            PlayerData data = entry.getValue();
-            
-            config.set(path + ".format", data.getFormat());
-            config.set(path + ".messages-enabled", data.isMessagesEnabled());
-            config.set(path + ".social-spy", data.isSocialSpyEnabled());
-            config.set(path + ".mentions-enabled", data.hasMentionsEnabled());
-            
-            if (data.getLastMessager() != null) {
-                config.set(path + ".last-messager", data.getLastMessager().toString());
-            }
-            
-            if (!data.getIgnoredPlayers().isEmpty()) {
-                config.set(path + ".ignored-players", 
-                    data.getIgnoredPlayers().stream()
-                        .map(UUID::toString)
-                        .toList());
-            }
+            plugin.getLogger().severe("Failed to load the data of " + player.getName() + ": " + e.getMessage());
+            player.kick(plugin.getMessageManager().getMessage("error.data_load_failed"));
+        }
+    }
+
+    /**
+     * Reads a player's latest data, changes waiting for the writer come before the storage.
+     */
+    private PlayerSnapshot loadSnapshot(UUID uuid) throws IOException {
+        ExecutorService writer = this.writer;
+        if (writer == null) {
+            PlayerSnapshot unsaved = pending.get(uuid);
+            return unsaved != null ? unsaved : storage.load(uuid);
         }
-        
         try {
-            config.save(dataFile);
-        } catch (IOException e) {
-            plugin.getLogger().severe("Could not save data.yml: " + e.getMessage());
+            return writer.submit(() -> {
+                PlayerSnapshot unsaved = pending.get(uuid);
+                return unsaved != null ? unsaved : storage.load(uuid);
+            }).get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out waiting for the data writer");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading");
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Drops a player who quit from memory when the storage loads players on join.
+     * Their changes are queued first. A newer login of the same player that was loaded
+     * while this session was online takes over this session's data instead.
+     */
+    public void unloadPlayerData(Player player) {
+        if (!storage.loadsOnJoin()) {
+            return;
+        }
+        flush();
+        UUID uuid = player.getUniqueId();
+        PlayerData data = playerData.remove(uuid);
+        if (data != null) {
+            preloaded.computeIfPresent(uuid, (key, loaded) -> new PreloadedData(data, loaded.loadedAt()));
+        }
+    }
+
+    /**
+     * Drops preloaded data of logins that never joined, like ones denied after the
+     * pre-login or clients that disconnected while configuring.
+     */
+    private void expirePreloaded() {
+        if (preloaded.isEmpty()) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - PRELOAD_TIMEOUT;
+        preloaded.values().removeIf(loaded -> loaded.loadedAt() < cutoff);
+    }
+
+    /**
+     * Queues the player's data to be written with the next flush.
+     */
+    public void savePlayerData(Player player) {
+        PlayerData data = playerData.get(player.getUniqueId());
+        if (data != null) {
+            data.markDirty();
+        }
+    }
+
+    private record PreloadedData(PlayerData data, long loadedAt) {
+    }
+}
@@ -3,6 +3,7 @@ package gg.gianluca.gianchat.data;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public class PlayerData {
     private String format;
@@ -11,6 +12,13 @@ public class PlayerData {
     private boolean mentionsEnabled;
     private UUID lastMessager;
     private Set<UUID> ignoredPlayers;
+    private Set<UUID> spyWatchedPlayers;
+    private boolean spyExcludingStaff;
+    private boolean spyKeywordsEnabled;
+    // Set by DataManager once the player is loaded, changes before that aren't written
+    private UUID uuid;
+    private Consumer<UUID> dirtyQueue;
+    private volatile boolean dirty;
 
     public PlayerData() {
         this.format = null;
@@ -18,7 +26,10 @@ public class PlayerData {
         this.socialSpyEnabled = false;
         this.mentionsEnabled = true;
         this.lastMessager = null;
-        this.ignoredPlayers = new HashSet<>();
+        this.ignoredPlayers = new CompactUuidSet();
+        this.spyWatchedPlayers = new HashSet<>();
+        this.spyExcludingStaff = false;
+        this.spyKeywordsEnabled = false;
     }
 
     public String getFormat() {
@@ -27,6 +38,7 @@ public class PlayerData {
 
     public void setFormat(String format) {
         this.format = format;
+        changed();
     }
 
     public boolean isMessagesEnabled() {
@@ -35,6 +47,7 @@ public class PlayerData {
 
     public void setMessagesEnabled(boolean enabled) {
         this.messagesEnabled = enabled;
+        changed();
     }
 
     public boolean isSocialSpyEnabled() {
@@ -43,6 +56,7 @@ public class PlayerData {
 
     public void setSocialSpyEnabled(boolean enabled) {
         this.socialSpyEnabled = enabled;
+        changed();
     }
 
     public boolean hasMentionsEnabled() {
@@ -51,6 +65,7 @@ public class PlayerData {
 
     public void setMentionsEnabled(boolean enabled) {
         this.mentionsEnabled = enabled;
+        changed();
     }
 
     public UUID getLastMessager() {
@@ -59,6 +74,7 @@ public class PlayerData {
 
     public void setLastMessager(UUID lastMessager) {
         this.lastMessager = lastMessager;
+        changed();
     }
 
     public Set<UUID> getIgnoredPlayers() {
@@ -66,6 +82,63 @@ public class PlayerData {
     }
 
     public void setIgnoredPlayers(Set<UUID> ignoredPlayers) {
-        this.ignoredPlayers = ignoredPlayers;
+        // Ignore lists are kept for every stored player, so they're always kept compact
+        this.ignoredPlayers = ignoredPlayers instanceof CompactUuidSet compact ? compact : new CompactUuidSet(ignoredPlayers);
+        changed();
     }
-} 
\ No newline at end of file
+
+    public Set<UUID> getSpyWatchedPlayers() {
+        return spyWatchedPlayers;
+    }
+
+    public void setSpyWatchedPlayers(Set<UUID> spyWatchedPlayers) {
+        this.spyWatchedPlayers = spyWatchedPlayers;
+        changed();
+    }
+
+    public boolean isSpyExcludingStaff() {
+        return spyExcludingStaff;
+    }
+
+    public void setSpyExcludingStaff(boolean spyExcludingStaff) {
+        this.spyExcludingStaff = spyExcludingStaff;
+        changed();
+    }
+
+    public boolean isSpyKeywordsEnabled() {
+        return spyKeywordsEnabled;
+    }
+
+    public void setSpyKeywordsEnabled(boolean spyKeywordsEnabled) {
+        this.spyKeywordsEnabled = spyKeywordsEnabled;
+        changed();
+    }
+
+    /**
+     * Marks the data as changed so it's written with the next flush. Setters do this
+     * themselves, call it after changing the ignored or watched players.
+     */
+    public void markDirty() {
+        changed();
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    void attach(UUID uuid, Consumer<UUID> dirtyQueue) {
+        this.uuid = uuid;
+        this.dirtyQueue = dirtyQueue;
+    }
+
+    void clearDirty() {
+        dirty = false;
+    }
+
+    private void changed() {
+        if (!dirty && dirtyQueue != null) {
+            dirty = true;
+            dirtyQueue.accept(uuid);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package gg.gianluca.gianchat.data;
+
+import gg.gianluca.gianchat.GianChat;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of changed players, so changes survive a crash long before
+ * playerdata.yml is rewritten. Every record holds the whole data of one player,
+ * replaying keeps the last record of each player. Records are written on the
+ * journal thread and everything queued while the previous batch was being synced
+ * is written and synced together.
+ *
+ * The journal is split in numbered generations ({@code journal/<n>.log}). Once the
+ * current one grows past the compaction size it's sealed, a new one is started and
+ * the sealed ones can be deleted once playerdata.yml contains their changes.
+ */
+public class PlayerDataJournal {
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    private final GianChat plugin;
+    private final File directory;
+    private final Queue<PlayerSnapshot> queue;
+    private final AtomicBoolean writeScheduled;
+    // Called on the journal thread with the last sealed generation
+    private final IntConsumer onSealed;
+    private ExecutorService executor;
+    private FileChannel channel;
+    private int generation;
+    private volatile long compactSize;
+    private volatile boolean compacting;
+
+    public PlayerDataJournal(GianChat plugin, File directory, IntConsumer onSealed) {
+        this.plugin = plugin;
+        this.directory = directory;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.writeScheduled = new AtomicBoolean();
+        this.onSealed = onSealed;
+        this.compactSize = 4L * 1024 * 1024;
+    }
+
+    public void setCompactSize(long compactSize) {
+        this.compactSize = Math.max(64 * 1024, compactSize);
+    }
+
+    /**
+     * Reads every generation in order and returns the last record of each player.
+     * A record cut short by a crash ends its generation.
+     */
+    public Map<UUID, PlayerSnapshot> replay() {
+        Map<UUID, PlayerSnapshot> players = new LinkedHashMap<>();
+        for (int generation : generations()) {
+            File file = generationFile(generation);
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    PlayerSnapshot snapshot = readRecord(input);
+                    if (snapshot == null) {
+                        break;
+                    }
+                    players.put(snapshot.uuid(), snapshot);
+                }
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to read " + file.getName() + ": " + e.getMessage());
+            }
+        }
+        return players;
+    }
+
+    /**
+     * Called once the changes of every generation up to the given one were written to
+     * playerdata.yml, or failed to be. Written generations are deleted.
+     */
+    public void compacted(int generation, boolean saved) {
+        if (saved) {
+            for (int existing : generations()) {
+                if (existing <= generation) {
+                    generationFile(existing).delete();
+                }
+            }
+        }
+        compacting = false;
+    }
+
+    public int getLastGeneration() {
+        int[] generations = generations();
+        return generations.length == 0 ? 0 : generations[generations.length - 1];
+    }
+
+    /**
+     * Opens a new generation after the existing ones and starts the journal thread.
+     */
+    public void start() {
+        if (executor != null) {
+            return;
+        }
+        directory.mkdirs();
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "GianChat Data Journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int first = getLastGeneration() + 1;
+        executor.execute(() -> open(first));
+    }
+
+    /**
+     * Writes everything queued, seals the current generation and stops the journal thread.
+     */
+    public void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.execute(() -> {
+            write();
+            seal();
+            closeChannel();
+        });
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    public boolean isStarted() {
+        return executor != null;
+    }
+
+    public void append(Collection<PlayerSnapshot> snapshots) {
+        if (executor == null || snapshots.isEmpty()) {
+            return;
+        }
+        queue.addAll(snapshots);
+        // A batch that hasn't been written yet picks up these records as well
+        if (writeScheduled.compareAndSet(false, true)) {
+            executor.execute(this::write);
+        }
+    }
+
+    private void write() {
+        writeScheduled.set(false);
+        if (channel == null || queue.isEmpty()) {
+            return;
+        }
+
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        PlayerSnapshot snapshot;
+        try {
+            while ((snapshot = queue.poll()) != null) {
+                writeRecord(batch, snapshot);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            // One sync for the whole batch
+            channel.force(false);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to write the player data journal: " + e.getMessage());
+            return;
+        }
+
+        try {
+            if (!compacting && channel.size() >= compactSize) {
+                compacting = true;
+                seal();
+                open(generation + 1);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to check the player data journal size: " + e.getMessage());
+        }
+    }
+
+    private void open(int generation) {
+        this.generation = generation;
+        try {
+            channel = FileChannel.open(generationFile(generation).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to open the player data journal: " + e.getMessage());
+            channel = null;
+        }
+    }
+
+    private void seal() {
+        closeChannel();
+        onSealed.accept(generation);
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to close the player data journal: " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    private int[] generations() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".log"));
+        if (files == null) {
+            return new int[0];
+        }
+        List<Integer> generations = new ArrayList<>();
+        for (File file : files) {
+            try {
+                generations.add(Integer.parseInt(file.getName().substring(0, file.getName().length() - 4)));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        int[] sorted = generations.stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private File generationFile(int generation) {
+        return new File(directory, generation + ".log");
+    }
+
+    // Record: int length, int crc32 of the payload, payload
+    private static void writeRecord(ByteArrayOutputStream batch, PlayerSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream payload = new DataOutputStream(bytes);
+        writeUuid(payload, snapshot.uuid());
+        int flags = (snapshot.messagesEnabled() ? 1 : 0)
+            | (snapshot.socialSpyEnabled() ? 2 : 0)
+            | (snapshot.mentionsEnabled() ? 4 : 0)
+            | (snapshot.spyExcludingStaff() ? 8 : 0)
+            | (snapshot.spyKeywordsEnabled() ? 16 : 0)
+            | (snapshot.format() != null ? 32 : 0)
+            | (snapshot.lastMessager() != null ? 64 : 0);
+        payload.writeByte(flags);
+        if (snapshot.format() != null) {
+            payload.writeUTF(snapshot.format());
+        }
+        if (snapshot.lastMessager() != null) {
+            writeUuid(payload, snapshot.lastMessager());
+        }
+        writeUuids(payload, snapshot.ignoredPlayers());
+        writeUuids(payload, snapshot.spyWatchedPlayers());
+        payload.flush();
+
+        byte[] data = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        DataOutputStream output = new DataOutputStream(batch);
+        output.writeInt(data.length);
+        output.writeInt((int) crc.getValue());
+        output.write(data);
+    }
+
+    private static PlayerSnapshot readRecord(DataInputStream input) throws IOException {
+        byte[] data;
+        try {
+            int length = input.readInt();
+            int checksum = input.readInt();
+            if (length < 0 || length > MAX_RECORD_SIZE) {
+                return null;
+            }
+            data = new byte[length];
+            input.readFully(data);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+
+        DataInputStream payload = new DataInputStream(new ByteArrayInputStream(data));
+        UUID uuid = readUuid(payload);
+        int flags = payload.readUnsignedByte();
+        String format = (flags & 32) != 0 ? payload.readUTF() : null;
+        UUID lastMessager = (flags & 64) != 0 ? readUuid(payload) : null;
+        List<UUID> ignored = readUuids(payload);
+        List<UUID> watched = readUuids(payload);
+        return new PlayerSnapshot(uuid, format, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0,
+            lastMessager, ignored, watched, (flags & 8) != 0, (flags & 16) != 0);
+    }
+
+    private static void writeUuid(DataOutputStream output, UUID uuid) throws IOException {
+        output.writeLong(uuid.getMostSignificantBits());
+        output.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream input) throws IOException {
+        return new UUID(input.readLong(), input.readLong());
+    }
+
+    private static void writeUuids(DataOutputStream output, List<UUID> uuids) throws IOException {
+        output.writeInt(uuids.size());
+        for (UUID uuid : uuids) {
+            writeUuid(output, uuid);
+        }
+    }
+
+    private static List<UUID> readUuids(DataInputStream input) throws IOException {
+        int count = input.readInt();
+        List<UUID> uuids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            uuids.add(readUuid(input));
+        }
+        return uuids;
+    }
+}
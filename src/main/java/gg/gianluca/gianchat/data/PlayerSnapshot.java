@@ -0,0 +1,49 @@
+package gg.gianluca.gianchat.data;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A copy of a player's data taken on the main thread, handed to the thread writing it to disk.
+ */
+public record PlayerSnapshot(
+    UUID uuid,
+    String format,
+    boolean messagesEnabled,
+    boolean socialSpyEnabled,
+    boolean mentionsEnabled,
+    UUID lastMessager,
+    List<UUID> ignoredPlayers,
+    List<UUID> spyWatchedPlayers,
+    boolean spyExcludingStaff,
+    boolean spyKeywordsEnabled
+) {
+    public static PlayerSnapshot of(UUID uuid, PlayerData data) {
+        return new PlayerSnapshot(
+            uuid,
+            data.getFormat(),
+            data.isMessagesEnabled(),
+            data.isSocialSpyEnabled(),
+            data.hasMentionsEnabled(),
+            data.getLastMessager(),
+            List.copyOf(data.getIgnoredPlayers()),
+            List.copyOf(data.getSpyWatchedPlayers()),
+            data.isSpyExcludingStaff(),
+            data.isSpyKeywordsEnabled()
+        );
+    }
+
+    public PlayerData toPlayerData() {
+        PlayerData data = new PlayerData();
+        data.setFormat(format);
+        data.setMessagesEnabled(messagesEnabled);
+        data.setSocialSpyEnabled(socialSpyEnabled);
+        data.setMentionsEnabled(mentionsEnabled);
+        data.setLastMessager(lastMessager);
+        data.getIgnoredPlayers().addAll(ignoredPlayers);
+        data.getSpyWatchedPlayers().addAll(spyWatchedPlayers);
+        data.setSpyExcludingStaff(spyExcludingStaff);
+        data.setSpyKeywordsEnabled(spyKeywordsEnabled);
+        return data;
+    }
+}
@@ -0,0 +1,42 @@
+package gg.gianluca.gianchat.data.storage;
+
+import gg.gianluca.gianchat.data.PlayerSnapshot;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Where player data is stored. Apart from opening it when the plugin starts, a
+ * storage is only used on the data writer thread.
+ */
+public interface PlayerStorage {
+    /**
+     * Opens the storage, returns false if it can't be used.
+     */
+    boolean open();
+
+    /**
+     * Returns the players kept in memory from the start. Storages loading players when
+     * they join return none.
+     */
+    Map<UUID, PlayerSnapshot> loadAll();
+
+    /**
+     * Whether players are loaded when they join and dropped from memory when they quit.
+     */
+    boolean loadsOnJoin();
+
+    /**
+     * Loads a single player, or returns null if they have no stored data.
+     */
+    PlayerSnapshot load(UUID uuid) throws IOException;
+
+    /**
+     * Stores the given players in a single write, returns false if it failed.
+     */
+    boolean save(Collection<PlayerSnapshot> snapshots);
+
+    void close();
+}
@@ -0,0 +1,225 @@
+package gg.gianluca.gianchat.data.storage;
+
+import gg.gianluca.gianchat.GianChat;
+import gg.gianluca.gianchat.data.PlayerSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Players in an embedded SQLite database, loaded when they join. Settings, ignored
+ * players and watched players each have their own table, saves upsert every player
+ * of a flush in one transaction with batched statements. Uses the SQLite driver
+ * shipped with the server.
+ */
+public class SqlitePlayerStorage implements PlayerStorage {
+    private static final String UPSERT_PLAYER = """
+        INSERT INTO players (uuid, format, messages_enabled, social_spy, mentions_enabled, last_messager,
+            spy_exclude_staff, spy_keywords)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+        ON CONFLICT (uuid) DO UPDATE SET
+            format = excluded.format,
+            messages_enabled = excluded.messages_enabled,
+            social_spy = excluded.social_spy,
+            mentions_enabled = excluded.mentions_enabled,
+            last_messager = excluded.last_messager,
+            spy_exclude_staff = excluded.spy_exclude_staff,
+            spy_keywords = excluded.spy_keywords""";
+
+    private final GianChat plugin;
+    private final File file;
+    private Connection connection;
+
+    public SqlitePlayerStorage(GianChat plugin, File file) {
+        this.plugin = plugin;
+        this.file = file;
+    }
+
+    @Override
+    public boolean open() {
+        try {
+            file.getParentFile().mkdirs();
+            connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA journal_mode = WAL");
+                statement.execute("PRAGMA synchronous = NORMAL");
+                statement.execute("PRAGMA foreign_keys = ON");
+                statement.execute("""
+                    CREATE TABLE IF NOT EXISTS players (
+                        uuid CHAR(36) PRIMARY KEY,
+                        format VARCHAR(64),
+                        messages_enabled BOOLEAN NOT NULL,
+                        social_spy BOOLEAN NOT NULL,
+                        mentions_enabled BOOLEAN NOT NULL,
+                        last_messager CHAR(36),
+                        spy_exclude_staff BOOLEAN NOT NULL,
+                        spy_keywords BOOLEAN NOT NULL
+                    )""");
+                statement.execute("""
+                    CREATE TABLE IF NOT EXISTS ignored_players (
+                        player CHAR(36) NOT NULL REFERENCES players (uuid) ON DELETE CASCADE,
+                        ignored CHAR(36) NOT NULL,
+                        PRIMARY KEY (player, ignored)
+                    )""");
+                statement.execute("""
+                    CREATE TABLE IF NOT EXISTS spy_watched_players (
+                        player CHAR(36) NOT NULL REFERENCES players (uuid) ON DELETE CASCADE,
+                        watched CHAR(36) NOT NULL,
+                        PRIMARY KEY (player, watched)
+                    )""");
+            }
+            connection.setAutoCommit(false);
+            return true;
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Failed to open " + file.getName() + ": " + e.getMessage());
+            close();
+            return false;
+        }
+    }
+
+    @Override
+    public Map<UUID, PlayerSnapshot> loadAll() {
+        return Map.of();
+    }
+
+    @Override
+    public boolean loadsOnJoin() {
+        return true;
+    }
+
+    @Override
+    public PlayerSnapshot load(UUID uuid) throws IOException {
+        String id = uuid.toString();
+        try {
+            PlayerSnapshot snapshot;
+            try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM players WHERE uuid = ?")) {
+                statement.setString(1, id);
+                try (ResultSet result = statement.executeQuery()) {
+                    if (!result.next()) {
+                        connection.commit();
+                        return null;
+                    }
+                    String lastMessager = result.getString("last_messager");
+                    snapshot = new PlayerSnapshot(
+                        uuid,
+                        result.getString("format"),
+                        result.getBoolean("messages_enabled"),
+                        result.getBoolean("social_spy"),
+                        result.getBoolean("mentions_enabled"),
+                        lastMessager != null ? UUID.fromString(lastMessager) : null,
+                        loadUuids("SELECT ignored FROM ignored_players WHERE player = ?", id),
+                        loadUuids("SELECT watched FROM spy_watched_players WHERE player = ?", id),
+                        result.getBoolean("spy_exclude_staff"),
+                        result.getBoolean("spy_keywords")
+                    );
+                }
+            }
+            connection.commit();
+            return snapshot;
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private List<UUID> loadUuids(String query, String player) throws SQLException {
+        List<UUID> uuids = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, player);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    uuids.add(UUID.fromString(result.getString(1)));
+                }
+            }
+        }
+        return uuids;
+    }
+
+    @Override
+    public boolean save(Collection<PlayerSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return true;
+        }
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT_PLAYER);
+             PreparedStatement clearIgnored = connection.prepareStatement("DELETE FROM ignored_players WHERE player = ?");
+             PreparedStatement insertIgnored = connection.prepareStatement("INSERT INTO ignored_players (player, ignored) VALUES (?, ?)");
+             PreparedStatement clearWatched = connection.prepareStatement("DELETE FROM spy_watched_players WHERE player = ?");
+             PreparedStatement insertWatched = connection.prepareStatement("INSERT INTO spy_watched_players (player, watched) VALUES (?, ?)")) {
+            for (PlayerSnapshot snapshot : snapshots) {
+                String id = snapshot.uuid().toString();
+                upsert.setString(1, id);
+                if (snapshot.format() != null) {
+                    upsert.setString(2, snapshot.format());
+                } else {
+                    upsert.setNull(2, Types.VARCHAR);
+                }
+                upsert.setBoolean(3, snapshot.messagesEnabled());
+                upsert.setBoolean(4, snapshot.socialSpyEnabled());
+                upsert.setBoolean(5, snapshot.mentionsEnabled());
+                if (snapshot.lastMessager() != null) {
+                    upsert.setString(6, snapshot.lastMessager().toString());
+                } else {
+                    upsert.setNull(6, Types.CHAR);
+                }
+                upsert.setBoolean(7, snapshot.spyExcludingStaff());
+                upsert.setBoolean(8, snapshot.spyKeywordsEnabled());
+                upsert.addBatch();
+
+                // The lists are replaced as a whole, a snapshot doesn't say what changed
+                clearIgnored.setString(1, id);
+                clearIgnored.addBatch();
+                for (UUID ignored : snapshot.ignoredPlayers()) {
+                    insertIgnored.setString(1, id);
+                    insertIgnored.setString(2, ignored.toString());
+                    insertIgnored.addBatch();
+                }
+                clearWatched.setString(1, id);
+                clearWatched.addBatch();
+                for (UUID watched : snapshot.spyWatchedPlayers()) {
+                    insertWatched.setString(1, id);
+                    insertWatched.setString(2, watched.toString());
+                    insertWatched.addBatch();
+                }
+            }
+            // Players first, the lists reference them
+            upsert.executeBatch();
+            clearIgnored.executeBatch();
+            insertIgnored.executeBatch();
+            clearWatched.executeBatch();
+            insertWatched.executeBatch();
+            connection.commit();
+            return true;
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Failed to save " + file.getName() + ": " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            plugin.getLogger().warning("Failed to close " + file.getName() + ": " + e.getMessage());
+        }
+        connection = null;
+    }
+}
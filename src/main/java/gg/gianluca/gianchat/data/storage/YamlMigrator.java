@@ -0,0 +1,53 @@
+package gg.gianluca.gianchat.data.storage;
+
+import gg.gianluca.gianchat.GianChat;
+import gg.gianluca.gianchat.data.PlayerSnapshot;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Moves the players of playerdata.yml into another storage once. The file is renamed
+ * afterwards so it isn't migrated again.
+ */
+public final class YamlMigrator {
+    private static final int BATCH_SIZE = 1000;
+
+    private YamlMigrator() {
+    }
+
+    public static void migrate(GianChat plugin, File yamlFile, PlayerStorage target) {
+        if (!yamlFile.exists() || yamlFile.length() == 0) {
+            return;
+        }
+
+        YamlPlayerStorage source = new YamlPlayerStorage(plugin, yamlFile);
+        source.open();
+        Map<UUID, PlayerSnapshot> players = source.loadAll();
+
+        List<PlayerSnapshot> batch = new ArrayList<>(BATCH_SIZE);
+        for (PlayerSnapshot snapshot : players.values()) {
+            batch.add(snapshot);
+            if (batch.size() == BATCH_SIZE) {
+                if (!target.save(batch)) {
+                    plugin.getLogger().severe("Failed to migrate " + yamlFile.getName() + ", it will be tried again on the next start");
+                    return;
+                }
+                batch.clear();
+            }
+        }
+        if (!target.save(batch)) {
+            plugin.getLogger().severe("Failed to migrate " + yamlFile.getName() + ", it will be tried again on the next start");
+            return;
+        }
+
+        File migrated = new File(yamlFile.getParentFile(), yamlFile.getName() + ".migrated");
+        if (!yamlFile.renameTo(migrated)) {
+            plugin.getLogger().warning("Failed to rename " + yamlFile.getName() + " after migrating it, remove it to avoid migrating it again");
+        }
+        plugin.getLogger().info("Migrated " + players.size() + " players from " + yamlFile.getName());
+    }
+}
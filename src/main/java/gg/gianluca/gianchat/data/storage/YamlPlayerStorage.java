@@ -0,0 +1,151 @@
+package gg.gianluca.gianchat.data.storage;
+
+import gg.gianluca.gianchat.GianChat;
+import gg.gianluca.gianchat.data.PlayerSnapshot;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Every player in a single playerdata.yml, all of them kept in memory. Each save
+ * rewrites the whole file through a temporary file.
+ */
+public class YamlPlayerStorage implements PlayerStorage {
+    private final GianChat plugin;
+    private final File file;
+    private YamlConfiguration config;
+
+    public YamlPlayerStorage(GianChat plugin, File file) {
+        this.plugin = plugin;
+        this.file = file;
+    }
+
+    @Override
+    public boolean open() {
+        // Create data file if it doesn't exist
+        if (!file.exists()) {
+            try {
+                file.getParentFile().mkdirs();
+                file.createNewFile();
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to create " + file.getName() + ": " + e.getMessage());
+                config = new YamlConfiguration();
+                return true;
+            }
+        }
+        config = YamlConfiguration.loadConfiguration(file);
+        return true;
+    }
+
+    @Override
+    public Map<UUID, PlayerSnapshot> loadAll() {
+        Map<UUID, PlayerSnapshot> players = new LinkedHashMap<>();
+        ConfigurationSection section = config.getConfigurationSection("players");
+        if (section == null) {
+            return players;
+        }
+        for (String uuidStr : section.getKeys(false)) {
+            try {
+                UUID uuid = UUID.fromString(uuidStr);
+                players.put(uuid, readPlayer(uuid, section.getConfigurationSection(uuidStr)));
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Invalid player data in " + file.getName() + ": " + uuidStr);
+            }
+        }
+        return players;
+    }
+
+    @Override
+    public boolean loadsOnJoin() {
+        return false;
+    }
+
+    @Override
+    public PlayerSnapshot load(UUID uuid) {
+        ConfigurationSection section = config.getConfigurationSection("players." + uuid);
+        return section != null ? readPlayer(uuid, section) : null;
+    }
+
+    private PlayerSnapshot readPlayer(UUID uuid, ConfigurationSection section) {
+        String lastMessager = section.getString("last-messager");
+        return new PlayerSnapshot(
+            uuid,
+            section.getString("format"),
+            section.getBoolean("messages-enabled", true),
+            // Older saves used social-spy-enabled
+            section.getBoolean("social-spy", section.getBoolean("social-spy-enabled", false)),
+            section.getBoolean("mentions-enabled", true),
+            lastMessager != null ? UUID.fromString(lastMessager) : null,
+            readUuids(section.getStringList("ignored-players")),
+            readUuids(section.getStringList("social-spy-filters.watched-players")),
+            section.getBoolean("social-spy-filters.exclude-staff", false),
+            section.getBoolean("social-spy-filters.keywords", false)
+        );
+    }
+
+    private static List<UUID> readUuids(List<String> values) {
+        List<UUID> uuids = new ArrayList<>(values.size());
+        for (String value : values) {
+            uuids.add(UUID.fromString(value));
+        }
+        return uuids;
+    }
+
+    private void writePlayer(PlayerSnapshot snapshot) {
+        String path = "players." + snapshot.uuid();
+        // Replace the whole entry so keys of older saves don't linger
+        config.set(path, null);
+        config.set(path + ".format", snapshot.format());
+        config.set(path + ".messages-enabled", snapshot.messagesEnabled());
+        config.set(path + ".social-spy", snapshot.socialSpyEnabled());
+        config.set(path + ".mentions-enabled", snapshot.mentionsEnabled());
+
+        if (snapshot.lastMessager() != null) {
+            config.set(path + ".last-messager", snapshot.lastMessager().toString());
+        }
+
+        if (!snapshot.ignoredPlayers().isEmpty()) {
+            config.set(path + ".ignored-players", snapshot.ignoredPlayers().stream()
+                .map(UUID::toString)
+                .toList());
+        }
+
+        config.set(path + ".social-spy-filters.exclude-staff", snapshot.spyExcludingStaff());
+        config.set(path + ".social-spy-filters.keywords", snapshot.spyKeywordsEnabled());
+        config.set(path + ".social-spy-filters.watched-players", snapshot.spyWatchedPlayers().stream()
+            .map(UUID::toString)
+            .toList());
+    }
+
+    @Override
+    public boolean save(Collection<PlayerSnapshot> snapshots) {
+        for (PlayerSnapshot snapshot : snapshots) {
+            writePlayer(snapshot);
+        }
+
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            Files.writeString(temp.toPath(), config.saveToString(), StandardCharsets.UTF_8);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to save " + file.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
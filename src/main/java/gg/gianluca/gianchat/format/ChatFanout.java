@@ -0,0 +1,90 @@
+package gg.gianluca.gianchat.format;
+
+import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.text.Component;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Delivers a rendered chat line to its recipients.
+ * Recipients that would see the exact same line are grouped and receive a
+ * single render through one {@link Audience}, so the render cost scales with
+ * the number of distinct views instead of the number of viewers.
+ * Only {@link PlaceholderScope#VIEWER} placeholders are resolved per recipient.
+ */
+public final class ChatFanout {
+
+    private ChatFanout() {
+    }
+
+    /**
+     * @param format The sender's format
+     * @param senderResolver Placeholder values resolved for the sender
+     * @param content The message content shown to viewers that weren't mentioned
+     * @param rendered The line already rendered with {@code content} and the sender's values
+     * @param variants The distinct message contents shown to mentioned recipients
+     * @param variantOf The index in {@code variants} of each mentioned recipient's content
+     * @param recipients Everyone who should receive the line
+     * @param viewerResolver Resolves a placeholder for a recipient
+     * @return The number of lines rendered on top of {@code rendered}
+     */
+    public static int deliver(ChatFormat format, Function<String, String> senderResolver, Component content,
+                              Component rendered, List<Component> variants, Map<UUID, Integer> variantOf,
+                              Collection<Player> recipients,
+                              BiFunction<Player, String, String> viewerResolver) {
+        // Only viewer scoped placeholders are resolved per recipient
+        List<String> viewerPlaceholders = format.getPlaceholders(PlaceholderScope.VIEWER);
+
+        Map<ViewKey, List<Player>> groups = new LinkedHashMap<>();
+        for (Player recipient : recipients) {
+            // Recipients seeing the same copy of a group mention share a render
+            Integer variant = variantOf.get(recipient.getUniqueId());
+            List<String> values = List.of();
+            if (!viewerPlaceholders.isEmpty()) {
+                values = new ArrayList<>(viewerPlaceholders.size());
+                for (String placeholder : viewerPlaceholders) {
+                    values.add(viewerResolver.apply(recipient, placeholder));
+                }
+            }
+            groups.computeIfAbsent(new ViewKey(variant != null ? variant : -1, values), key -> new ArrayList<>()).add(recipient);
+        }
+
+        int renders = 0;
+        for (Map.Entry<ViewKey, List<Player>> group : groups.entrySet()) {
+            ViewKey key = group.getKey();
+            Component line;
+            if (key.variant() < 0 && key.values().isEmpty()) {
+                line = rendered;
+            } else {
+                Map<String, String> viewerValues = new HashMap<>();
+                for (int i = 0; i < key.values().size(); i++) {
+                    viewerValues.put(viewerPlaceholders.get(i), key.values().get(i));
+                }
+                Component groupContent = key.variant() >= 0 ? variants.get(key.variant()) : content;
+                line = format.render(placeholder -> viewerValues.containsKey(placeholder)
+                    ? viewerValues.get(placeholder) : senderResolver.apply(placeholder), groupContent);
+                renders++;
+            }
+
+            List<Player> players = group.getValue();
+            if (players.size() == 1) {
+                players.get(0).sendMessage(line);
+            } else {
+                Audience.audience(players).sendMessage(line);
+            }
+        }
+        return renders;
+    }
+
+    private record ViewKey(int variant, List<String> values) {
+    }
+}
@@ -1,28 +1,70 @@
 package gg.gianluca.gianchat.format;
 
 import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.JoinConfiguration;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 import net.kyori.adventure.text.minimessage.tag.resolver.TagResolver;
 import net.kyori.adventure.text.event.ClickEvent;
 import org.bukkit.configuration.ConfigurationSection;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 public class ChatFormat {
+    public static final String MESSAGE_PLACEHOLDER = "message";
+
     private final String name;
     private final int priority;
     private final ComponentSection prefix;
     private final ComponentSection playerName;
     private final ComponentSection separator;
     private final ComponentSection message;
+    private final Set<String> placeholders;
+    private final Map<String, PlaceholderScope> scopes;
+    private final Map<PlaceholderScope, List<String>> placeholdersByScope;
+    private final boolean relational;
 
     public ChatFormat(String name, ConfigurationSection config) {
+        this(name, config, PlaceholderClassifier.DEFAULT);
+    }
+
+    public ChatFormat(String name, ConfigurationSection config, PlaceholderClassifier classifier) {
         this.name = name;
         this.priority = config.getInt("priority", 1);
         this.prefix = new ComponentSection(config.getConfigurationSection("prefix"));
         this.playerName = new ComponentSection(config.getConfigurationSection("name"));
         this.separator = new ComponentSection(config.getConfigurationSection("separator"));
         this.message = new ComponentSection(config.getConfigurationSection("message"));
+
+        Set<String> placeholders = new LinkedHashSet<>();
+        for (ComponentSection section : List.of(prefix, playerName, separator, message)) {
+            section.collectPlaceholders(placeholders);
+        }
+        placeholders.remove(MESSAGE_PLACEHOLDER);
+        this.placeholders = Set.copyOf(placeholders);
+
+        // Classify every placeholder once so rendering knows what to resolve and for whom
+        Map<String, PlaceholderScope> scopes = new HashMap<>();
+        Map<PlaceholderScope, List<String>> byScope = new EnumMap<>(PlaceholderScope.class);
+        for (PlaceholderScope scope : PlaceholderScope.values()) {
+            byScope.put(scope, new ArrayList<>());
+        }
+        for (String placeholder : placeholders) {
+            PlaceholderScope scope = classifier.classify(placeholder);
+            scopes.put(placeholder, scope);
+            byScope.get(scope).add(placeholder);
+        }
+        byScope.replaceAll((scope, list) -> List.copyOf(list));
+        this.scopes = Map.copyOf(scopes);
+        this.placeholdersByScope = byScope;
+        this.relational = byScope.get(PlaceholderScope.VIEWER).stream()
+            .anyMatch(placeholder -> placeholder.startsWith(PlaceholderClassifier.RELATIONAL_PREFIX));
     }
 
     public String getName() {
@@ -34,27 +76,76 @@ public class ChatFormat {
     }
 
     public Component getPrefix() {
-        return prefix.build();
+        return prefix.preview;
     }
 
     public Component getNameFormat() {
-        return playerName.build();
+        return playerName.preview;
     }
 
     public Component getSeparator() {
-        return separator.build();
+        return separator.preview;
     }
 
     public ClickEvent getNameClickEvent() {
-        return playerName.clickEvent != null ? 
-            ClickEvent.clickEvent(ClickEvent.Action.valueOf(playerName.clickEvent.type()), playerName.clickEvent.command()) : 
-            null;
+        return playerName.clickEvent != null ? playerName.clickEvent.preview() : null;
     }
 
     public ClickEvent getMessageClickEvent() {
-        return message.clickEvent != null ? 
-            ClickEvent.clickEvent(ClickEvent.Action.valueOf(message.clickEvent.type()), message.clickEvent.command()) : 
-            null;
+        return message.clickEvent != null ? message.clickEvent.preview() : null;
+    }
+
+    /**
+     * Every placeholder used by this format, excluding {@code %message%}.
+     */
+    public Set<String> getPlaceholders() {
+        return placeholders;
+    }
+
+    public List<String> getPlaceholders(PlaceholderScope scope) {
+        return placeholdersByScope.get(scope);
+    }
+
+    public PlaceholderScope getScope(String placeholder) {
+        return scopes.getOrDefault(placeholder, PlaceholderScope.SENDER);
+    }
+
+    /**
+     * Whether this format uses {@code %rel_...%} placeholders, which depend on both sender and viewer.
+     */
+    public boolean hasRelationalPlaceholders() {
+        return relational;
+    }
+
+    /**
+     * Gets the number of placeholder lookups a single message costs, not counting viewers.
+     */
+    public int getLookupsPerMessage() {
+        return placeholdersByScope.get(PlaceholderScope.SENDER).size()
+            + placeholdersByScope.get(PlaceholderScope.TIME_VARYING).size();
+    }
+
+    /**
+     * Gets the number of placeholder lookups every viewer adds to a message.
+     */
+    public int getLookupsPerViewer() {
+        return placeholdersByScope.get(PlaceholderScope.VIEWER).size();
+    }
+
+    /**
+     * Renders the compiled format.
+     *
+     * @param resolver Resolves a placeholder identifier to its raw value, or null to leave it as written
+     * @param messageContent The component to insert for {@code %message%}
+     * @return The rendered chat line
+     */
+    public Component render(Function<String, String> resolver, Component messageContent) {
+        RenderContext context = new RenderContext(resolver, messageContent);
+        return Component.empty()
+                .append(prefix.render(context))
+                .append(playerName.render(context))
+                .append(separator.render(context))
+                .append(message.render(context));
     }
 
     public Component buildComponent(TagResolver... placeholders) {
@@ -65,59 +156,140 @@ public class ChatFormat {
                 .append(message.build(placeholders));
     }
 
+    private static final class RenderContext {
+        private final Function<String, String> resolver;
+        private final Component messageContent;
+        private final Map<String, String> values = new HashMap<>();
+        private final Map<String, Component> components = new HashMap<>();
+
+        private RenderContext(Function<String, String> resolver, Component messageContent) {
+            this.resolver = resolver;
+            this.messageContent = messageContent;
+        }
+
+        private String value(String placeholder) {
+            return values.computeIfAbsent(placeholder, resolver);
+        }
+
+        private Component component(String placeholder) {
+            if (MESSAGE_PLACEHOLDER.equals(placeholder)) {
+                return messageContent;
+            }
+            return components.computeIfAbsent(placeholder, key -> {
+                String value = value(key);
+                return ComponentTemplate.valueComponent(value != null ? value : "%" + key + "%");
+            });
+        }
+    }
+
     private static class ComponentSection {
-        private final String value;
-        private final List<String> tooltip;
-        private final ClickEventRecord clickEvent;
+        private final ComponentTemplate value;
+        private final List<ComponentTemplate> tooltip;
+        private final CompiledClickEvent clickEvent;
+        private final Component staticTooltip;
+        private final Component preview;
 
         public ComponentSection(ConfigurationSection section) {
             if (section == null) {
-                this.value = "";
+                this.value = ComponentTemplate.EMPTY;
                 this.tooltip = List.of();
                 this.clickEvent = null;
+                this.staticTooltip = null;
+                this.preview = Component.empty();
                 return;
             }
 
-            this.value = section.getString("value", "");
-            this.tooltip = section.getStringList("tooltip");
-            
+            this.value = ComponentTemplate.compile(section.getString("value", ""));
+
+            List<ComponentTemplate> lines = new ArrayList<>();
+            for (String line : section.getStringList("tooltip")) {
+                lines.add(ComponentTemplate.compile(line));
+            }
+            this.tooltip = List.copyOf(lines);
+
             ConfigurationSection clickSection = section.getConfigurationSection("click_event");
             if (clickSection != null) {
-                this.clickEvent = new ClickEventRecord(
-                    clickSection.getString("type", "SUGGEST_COMMAND"),
+                this.clickEvent = CompiledClickEvent.compile(
+                    ClickEvent.Action.valueOf(clickSection.getString("type", "SUGGEST_COMMAND")),
                     clickSection.getString("command", "")
                 );
             } else {
                 this.clickEvent = null;
             }
+
+            // Tooltips without placeholders are built once and shared by every render
+            boolean tooltipStatic = tooltip.stream().allMatch(ComponentTemplate::isStatic);
+            this.staticTooltip = tooltipStatic && !tooltip.isEmpty() ? joinTooltip(placeholder -> null) : null;
+
+            Function<String, Component> literal = placeholder -> Component.text("%" + placeholder + "%");
+            Component previewTooltip = tooltip.isEmpty() ? null : joinTooltip(literal);
+            this.preview = decorate(value.render(literal), previewTooltip,
+                clickEvent != null ? clickEvent.preview() : null);
+        }
+
+        private Component joinTooltip(Function<String, Component> values) {
+            List<Component> lines = new ArrayList<>(tooltip.size());
+            for (ComponentTemplate line : tooltip) {
+                lines.add(line.render(values));
+            }
+            return Component.join(JoinConfiguration.newlines(), lines);
+        }
+
+        private static Component decorate(Component component, Component hover, ClickEvent click) {
+            if (hover != null) {
+                component = component.hoverEvent(hover);
+            }
+            if (click != null) {
+                component = component.clickEvent(click);
+            }
+            return component;
+        }
+
+        private Component render(RenderContext context) {
+            Component hover = staticTooltip;
+            if (hover == null && !tooltip.isEmpty()) {
+                hover = joinTooltip(context::component);
+            }
+            ClickEvent click = clickEvent != null ? clickEvent.render(context::value) : null;
+            return decorate(value.render(context::component), hover, click);
+        }
+
+        private void collectPlaceholders(Set<String> placeholders) {
+            placeholders.addAll(value.getPlaceholders());
+            for (ComponentTemplate line : tooltip) {
+                placeholders.addAll(line.getPlaceholders());
+            }
+            if (clickEvent != null) {
+                placeholders.addAll(clickEvent.command().getPlaceholders());
+            }
         }
 
         public Component build(TagResolver... placeholders) {
-            Component component = MiniMessage.miniMessage().deserialize(value, placeholders);
-            
+            Component component = MiniMessage.miniMessage().deserialize(value.getSource(), placeholders);
+
             if (!tooltip.isEmpty()) {
-                Component tooltipComponent = Component.empty();
-                for (int i = 0; i < tooltip.size(); i++) {
-                    tooltipComponent = tooltipComponent.append(
-                        MiniMessage.miniMessage().deserialize(tooltip.get(i), placeholders)
-                    );
-                    if (i < tooltip.size() - 1) {
-                        tooltipComponent = tooltipComponent.append(Component.newline());
-                    }
+                List<Component> lines = new ArrayList<>(tooltip.size());
+                for (ComponentTemplate line : tooltip) {
+                    lines.add(MiniMessage.miniMessage().deserialize(line.getSource(), placeholders));
                 }
-                component = component.hoverEvent(tooltipComponent);
+                component = component.hoverEvent(Component.join(JoinConfiguration.newlines(), lines));
             }
 
             if (clickEvent != null) {
-                component = component.clickEvent(ClickEvent.clickEvent(
-                    ClickEvent.Action.valueOf(clickEvent.type()),
-                    clickEvent.command()
-                ));
+                component = component.clickEvent(clickEvent.preview());
             }
 
             return component;
         }
     }
 
-    private record ClickEventRecord(String type, String command) {}
-} 
\ No newline at end of file
+    private record CompiledClickEvent(ClickEvent.Action action, TextTemplate command, ClickEvent preview) {
+        private static CompiledClickEvent compile(ClickEvent.Action action, String command) {
+            return new CompiledClickEvent(action, TextTemplate.compile(command), ClickEvent.clickEvent(action, command));
+        }
+
+        private ClickEvent render(Function<String, String> values) {
+            return command.isStatic() ? preview : ClickEvent.clickEvent(action, command.render(values));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package gg.gianluca.gianchat.format;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TranslatableComponent;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
+import net.kyori.adventure.text.minimessage.tag.resolver.TagResolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A MiniMessage string compiled once into a component tree.
+ * Every {@code %placeholder%} is replaced by a marker component, so rendering
+ * only swaps markers for their values instead of parsing the format again.
+ */
+public final class ComponentTemplate {
+    public static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("%([^%\\s]+)%");
+    public static final ComponentTemplate EMPTY = compile("");
+
+    private static final String SLOT_KEY = "gianchat.slot.";
+    private static final String SLOT_TAG = "gcslot";
+
+    private final String source;
+    private final List<String> slots;
+    private final Component component;
+    private final boolean dynamic;
+
+    private ComponentTemplate(String source, List<String> slots, Component component, boolean dynamic) {
+        this.source = source;
+        this.slots = slots;
+        this.component = component;
+        this.dynamic = dynamic;
+    }
+
+    public static ComponentTemplate compile(String source) {
+        if (source == null || source.isEmpty()) {
+            return new ComponentTemplate("", List.of(), Component.empty(), false);
+        }
+
+        List<String> slots = new ArrayList<>();
+        StringBuilder marked = new StringBuilder();
+        Matcher matcher = PLACEHOLDER_PATTERN.matcher(source);
+        int last = 0;
+        boolean dynamic = false;
+
+        while (matcher.find()) {
+            String placeholder = matcher.group(1);
+            if (!slots.contains(placeholder)) {
+                slots.add(placeholder);
+            }
+            // Placeholders inside a tag argument can't be marked, parse those at render time
+            if (isInsideTag(source, matcher.start())) {
+                dynamic = true;
+            }
+            marked.append(source, last, matcher.start())
+                .append('<').append(SLOT_TAG).append(slots.indexOf(placeholder)).append('>');
+            last = matcher.end();
+        }
+        marked.append(source, last, source.length());
+
+        List<String> slotList = Collections.unmodifiableList(slots);
+        if (dynamic) {
+            return new ComponentTemplate(source, slotList, null, true);
+        }
+
+        TagResolver.Builder resolvers = TagResolver.builder();
+        for (int i = 0; i < slots.size(); i++) {
+            resolvers.resolver(Placeholder.component(SLOT_TAG + i, Component.translatable(SLOT_KEY + i)));
+        }
+        Component parsed = MiniMessage.miniMessage().deserialize(marked.toString(), resolvers.build());
+        return new ComponentTemplate(source, slotList, parsed, false);
+    }
+
+    private static boolean isInsideTag(String source, int index) {
+        int open = source.lastIndexOf('<', index);
+        return open >= 0 && source.lastIndexOf('>', index) < open;
+    }
+
+    /**
+     * Converts a resolved placeholder value into a component. Values only go
+     * through MiniMessage when they actually contain tags.
+     */
+    public static Component valueComponent(String value) {
+        if (value == null || value.isEmpty()) {
+            return Component.empty();
+        }
+        return value.indexOf('<') < 0 ? Component.text(value) : MiniMessage.miniMessage().deserialize(value);
+    }
+
+    public Component render(Function<String, Component> values) {
+        if (slots.isEmpty()) {
+            return component;
+        }
+
+        if (dynamic) {
+            StringBuilder builder = new StringBuilder();
+            Matcher matcher = PLACEHOLDER_PATTERN.matcher(source);
+            int last = 0;
+            while (matcher.find()) {
+                builder.append(source, last, matcher.start())
+                    .append(MiniMessage.miniMessage().serialize(values.apply(matcher.group(1))));
+                last = matcher.end();
+            }
+            builder.append(source, last, source.length());
+            return MiniMessage.miniMessage().deserialize(builder.toString());
+        }
+
+        Component[] resolved = new Component[slots.size()];
+        for (int i = 0; i < resolved.length; i++) {
+            resolved[i] = values.apply(slots.get(i));
+        }
+        return substitute(component, resolved);
+    }
+
+    private static Component substitute(Component component, Component[] resolved) {
+        if (component instanceof TranslatableComponent translatable && translatable.key().startsWith(SLOT_KEY)) {
+            int index = Integer.parseInt(translatable.key().substring(SLOT_KEY.length()));
+            return resolved[index].applyFallbackStyle(translatable.style());
+        }
+
+        List<Component> children = component.children();
+        if (children.isEmpty()) {
+            return component;
+        }
+
+        List<Component> rendered = new ArrayList<>(children.size());
+        for (Component child : children) {
+            rendered.add(substitute(child, resolved));
+        }
+        return component.children(rendered);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public List<String> getPlaceholders() {
+        return slots;
+    }
+
+    public boolean isStatic() {
+        return slots.isEmpty();
+    }
+
+    public boolean isDynamic() {
+        return dynamic;
+    }
+}
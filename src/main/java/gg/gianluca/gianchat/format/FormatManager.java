@@ -1,7 +1,9 @@
 package gg.gianluca.gianchat.format;
 
 import gg.gianluca.gianchat.GianChat;
+import me.clip.placeholderapi.PlaceholderAPI;
 import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import net.kyori.adventure.text.Component;
@@ -10,33 +12,70 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class FormatManager {
     private final GianChat plugin;
-    private final Map<String, ChatFormat> formats;
+    private final AtomicReference<FormatRegistry> registry;
     private final Map<UUID, String> playerFormats;
+    private final Map<UUID, ChatFormat> resolvedFormats;
     private final File formatsDirectory;
+    private volatile boolean permissionAssignment;
 
     public FormatManager(GianChat plugin) {
         this.plugin = plugin;
-        this.formats = new HashMap<>();
-        this.playerFormats = new HashMap<>();
+        this.registry = new AtomicReference<>(FormatRegistry.EMPTY);
+        this.playerFormats = new ConcurrentHashMap<>();
+        this.resolvedFormats = new ConcurrentHashMap<>();
         this.formatsDirectory = new File(plugin.getDataFolder(), "formats");
         loadFormats();
     }
 
     public void loadPlayerFormats() {
-        playerFormats.clear();
         for (Player player : Bukkit.getOnlinePlayers()) {
             String format = plugin.getDataManager().getPlayerData(player).getFormat();
             if (format != null) {
                 playerFormats.put(player.getUniqueId(), format);
+            } else {
+                playerFormats.remove(player.getUniqueId());
             }
         }
     }
 
+    /**
+     * Loads every format and publishes them right away. Must be called on the main thread.
+     */
     public void loadFormats() {
-        formats.clear();
+        permissionAssignment = plugin.getConfig().getBoolean("format-permissions.enabled", false);
+        publish(compileFormats(PlaceholderClassifier.fromConfig(
+            plugin.getConfig().getConfigurationSection("chat-placeholders"))));
+    }
+
+    /**
+     * Loads and compiles every format off the main thread, then swaps them in
+     * on the main thread. Chat keeps using the previous formats until the swap.
+     */
+    public CompletableFuture<Void> reloadFormats() {
+        permissionAssignment = plugin.getConfig().getBoolean("format-permissions.enabled", false);
+        PlaceholderClassifier classifier = PlaceholderClassifier.fromConfig(
+            plugin.getConfig().getConfigurationSection("chat-placeholders"));
+        Executor async = task -> plugin.getServer().getScheduler().runTaskAsynchronously(plugin, task);
+        Executor sync = task -> plugin.getServer().getScheduler().runTask(plugin, task);
+
+        return CompletableFuture.supplyAsync(() -> compileFormats(classifier), async)
+            .thenAcceptAsync(this::publish, sync)
+            .whenComplete((result, error) -> {
+                if (error != null) {
+                    plugin.getLogger().severe("Failed to reload formats: " + error.getMessage());
+                }
+            });
+    }
+
+    private Map<String, ChatFormat> compileFormats(PlaceholderClassifier classifier) {
+        Map<String, ChatFormat> formats = new HashMap<>();
 
         if (!formatsDirectory.exists()) {
             formatsDirectory.mkdirs();
@@ -44,16 +83,100 @@ public class FormatManager {
         }
 
         File[] files = formatsDirectory.listFiles((dir, name) -> name.endsWith(".yml"));
-        if (files == null) return;
+        if (files == null) return formats;
 
         for (File file : files) {
             String formatName = file.getName().replace(".yml", "");
             YamlConfiguration config = YamlConfiguration.loadConfiguration(file);
-            formats.put(formatName, new ChatFormat(formatName, config));
+            try {
+                ChatFormat format = new ChatFormat(formatName, config, classifier);
+                formats.put(formatName, format);
+                plugin.getLogger().info("Loaded format " + formatName + ": " + format.getLookupsPerMessage()
+                    + " placeholder lookups per message, " + format.getLookupsPerViewer() + " per viewer, "
+                    + format.getPlaceholders(PlaceholderScope.STATIC).size() + " resolved at load");
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().severe("Failed to compile format " + formatName + ": " + e.getMessage());
+            }
         }
+        return formats;
+    }
+
+    private void publish(Map<String, ChatFormat> formats) {
+        // Static placeholders still go through PlaceholderAPI, so they are resolved here on the main thread
+        Map<String, String> staticPlaceholders = new HashMap<>();
+        for (ChatFormat format : formats.values()) {
+            for (String placeholder : format.getPlaceholders(PlaceholderScope.STATIC)) {
+                staticPlaceholders.computeIfAbsent(placeholder,
+                    key -> PlaceholderAPI.setPlaceholders((OfflinePlayer) null, "%" + key + "%"));
+            }
+        }
+        registry.set(new FormatRegistry(formats, staticPlaceholders));
 
         // Load player formats after loading format definitions
         loadPlayerFormats();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            refreshPlayerFormat(player);
+        }
+        if (plugin.getPlaceholderSnapshots() != null) {
+            plugin.getPlaceholderSnapshots().requestRefreshAll();
+        }
+
+        // Format groups follow the formats that were just loaded
+        if (plugin.getMentionManager() != null) {
+            plugin.getMentionManager().getGroups().rebuild();
+        }
+    }
+
+    /**
+     * Recomputes the format a player chats with. Called on join, reload, format
+     * changes and permission changes, so chat only needs a single lookup.
+     * Must be called on the main thread.
+     */
+    public void refreshPlayerFormat(Player player) {
+        ChatFormat format = resolveFormat(player);
+        ChatFormat previous = format != null
+            ? resolvedFormats.put(player.getUniqueId(), format)
+            : resolvedFormats.remove(player.getUniqueId());
+
+        // The new format may need different placeholders
+        if (previous != format && plugin.getPlaceholderSnapshots() != null) {
+            plugin.getPlaceholderSnapshots().requestRefresh(player.getUniqueId());
+        }
+
+        // Format and permission groups can be mentioned in chat
+        if (plugin.getMentionManager() != null) {
+            plugin.getMentionManager().getGroups().update(player);
+        }
+    }
+
+    private ChatFormat resolveFormat(Player player) {
+        FormatRegistry current = registry.get();
+
+        // A format picked by the player always wins
+        ChatFormat selected = current.getFormat(playerFormats.get(player.getUniqueId()));
+        if (selected != null) {
+            return selected;
+        }
+
+        if (permissionAssignment) {
+            for (ChatFormat format : current.getFormatsByPriority()) {
+                if (player.hasPermission("gianchat.format." + format.getName())) {
+                    return format;
+                }
+            }
+        }
+        return current.getDefaultFormat();
+    }
+
+    public FormatRegistry getRegistry() {
+        return registry.get();
+    }
+
+    /**
+     * Gets the value of a static placeholder resolved when formats were loaded.
+     */
+    public String getStaticPlaceholder(String placeholder) {
+        return registry.get().getStaticPlaceholder(placeholder);
     }
 
     private void saveDefaultFormat() {
@@ -68,22 +191,15 @@ public class FormatManager {
     }
 
     public Collection<ChatFormat> getFormats() {
-        return formats.values();
+        return registry.get().getFormats();
     }
 
     public ChatFormat getFormat(String name) {
-        return formats.get(name);
+        return registry.get().getFormat(name);
     }
 
     public ChatFormat getPlayerFormat(Player player) {
-        String formatName = playerFormats.get(player.getUniqueId());
-        if (formatName == null) {
-            // Return default format if no format is set
-            return formats.values().stream()
-                .min(Comparator.comparingInt(ChatFormat::getPriority))
-                .orElse(null);
-        }
-        return formats.get(formatName);
+        return getFormatForPlayer(player).orElse(null);
     }
 
     public void setPlayerFormat(Player player, ChatFormat format) {
@@ -93,6 +209,7 @@ public class FormatManager {
             playerFormats.put(player.getUniqueId(), format.getName());
             plugin.getDataManager().getPlayerData(player).setFormat(format.getName());
         }
+        refreshPlayerFormat(player);
     }
 
     public Component getPrefix(Player player) {
@@ -111,16 +228,16 @@ public class FormatManager {
     }
 
     public Optional<ChatFormat> getFormatForPlayer(Player player) {
-        String formatName = playerFormats.get(player.getUniqueId());
-        if (formatName == null) {
-            // Return default format if no format is set
-            return formats.values().stream()
-                .min(Comparator.comparingInt(ChatFormat::getPriority));
+        ChatFormat format = resolvedFormats.get(player.getUniqueId());
+        if (format == null) {
+            // Not resolved yet, fall back to the default format
+            return Optional.ofNullable(registry.get().getDefaultFormat());
         }
-        return Optional.ofNullable(formats.get(formatName));
+        return Optional.of(format);
     }
 
     public void removePlayerFormat(Player player) {
         playerFormats.remove(player.getUniqueId());
+        resolvedFormats.remove(player.getUniqueId());
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,55 @@
+package gg.gianluca.gianchat.format;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable set of loaded formats. {@link FormatManager} publishes a new
+ * registry on every reload, so readers always see one complete set of formats.
+ */
+public final class FormatRegistry {
+    public static final FormatRegistry EMPTY = new FormatRegistry(Map.of(), Map.of());
+
+    private final Map<String, ChatFormat> formats;
+    private final Map<String, String> staticPlaceholders;
+    private final List<ChatFormat> byPriority;
+    private final ChatFormat defaultFormat;
+
+    public FormatRegistry(Map<String, ChatFormat> formats, Map<String, String> staticPlaceholders) {
+        this.formats = Map.copyOf(formats);
+        this.staticPlaceholders = Map.copyOf(staticPlaceholders);
+        this.byPriority = this.formats.values().stream()
+            .sorted(Comparator.comparingInt(ChatFormat::getPriority).reversed()
+                .thenComparing(ChatFormat::getName))
+            .toList();
+        this.defaultFormat = byPriority.isEmpty() ? null : byPriority.get(byPriority.size() - 1);
+    }
+
+    public Collection<ChatFormat> getFormats() {
+        return formats.values();
+    }
+
+    public ChatFormat getFormat(String name) {
+        return name != null ? formats.get(name) : null;
+    }
+
+    /**
+     * Gets every format sorted from the highest to the lowest priority.
+     */
+    public List<ChatFormat> getFormatsByPriority() {
+        return byPriority;
+    }
+
+    /**
+     * Gets the format used by players without one, the format with the lowest priority.
+     */
+    public ChatFormat getDefaultFormat() {
+        return defaultFormat;
+    }
+
+    public String getStaticPlaceholder(String placeholder) {
+        return staticPlaceholders.get(placeholder);
+    }
+}
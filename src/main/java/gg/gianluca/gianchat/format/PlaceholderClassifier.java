@@ -0,0 +1,71 @@
+package gg.gianluca.gianchat.format;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.List;
+
+/**
+ * Decides the {@link PlaceholderScope} of a placeholder from the
+ * {@code chat-placeholders} section of config.yml. Entries ending in
+ * {@code *} match every placeholder starting with them.
+ */
+public class PlaceholderClassifier {
+    public static final String RELATIONAL_PREFIX = "rel_";
+    public static final String VIEWER_PREFIX = "viewer_";
+    public static final PlaceholderClassifier DEFAULT =
+        new PlaceholderClassifier(List.of("server_name"), List.of("server_time_*"), List.of());
+
+    private final List<String> staticPlaceholders;
+    private final List<String> timeVaryingPlaceholders;
+    private final List<String> viewerPlaceholders;
+
+    public PlaceholderClassifier(List<String> staticPlaceholders, List<String> timeVaryingPlaceholders,
+                                 List<String> viewerPlaceholders) {
+        this.staticPlaceholders = List.copyOf(staticPlaceholders);
+        this.timeVaryingPlaceholders = List.copyOf(timeVaryingPlaceholders);
+        this.viewerPlaceholders = List.copyOf(viewerPlaceholders);
+    }
+
+    public static PlaceholderClassifier fromConfig(ConfigurationSection section) {
+        if (section == null) {
+            return DEFAULT;
+        }
+        return new PlaceholderClassifier(
+            section.getStringList("static"),
+            section.getStringList("time-varying"),
+            section.getStringList("viewer")
+        );
+    }
+
+    public PlaceholderScope classify(String placeholder) {
+        if (placeholder.startsWith(RELATIONAL_PREFIX) || placeholder.startsWith(VIEWER_PREFIX)
+                || matches(viewerPlaceholders, placeholder)) {
+            return PlaceholderScope.VIEWER;
+        }
+        if (matches(timeVaryingPlaceholders, placeholder)) {
+            return PlaceholderScope.TIME_VARYING;
+        }
+        if (matches(staticPlaceholders, placeholder)) {
+            return PlaceholderScope.STATIC;
+        }
+        return PlaceholderScope.SENDER;
+    }
+
+    /**
+     * Gets the placeholder to resolve against the viewer, dropping the {@code viewer_} marker.
+     */
+    public static String viewerPlaceholder(String placeholder) {
+        return placeholder.startsWith(VIEWER_PREFIX) ? placeholder.substring(VIEWER_PREFIX.length()) : placeholder;
+    }
+
+    private static boolean matches(List<String> patterns, String placeholder) {
+        for (String pattern : patterns) {
+            if (pattern.endsWith("*")
+                    ? placeholder.startsWith(pattern.substring(0, pattern.length() - 1))
+                    : placeholder.equals(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,15 @@
+package gg.gianluca.gianchat.format;
+
+/**
+ * What a format placeholder depends on, which decides how often it is resolved.
+ */
+public enum PlaceholderScope {
+    /** Same for everyone, resolved once when formats are loaded */
+    STATIC,
+    /** Depends on the sender, resolved once per message */
+    SENDER,
+    /** Depends on the sender but changes over time, never reused between messages */
+    TIME_VARYING,
+    /** Depends on who reads the message, resolved for every viewer */
+    VIEWER
+}
@@ -0,0 +1,84 @@
+package gg.gianluca.gianchat.format;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+
+/**
+ * A plain string (click commands, urls) split into literal parts and placeholder slots.
+ */
+public final class TextTemplate {
+    public static final TextTemplate EMPTY = compile("");
+
+    private final String source;
+    private final String[] literals;
+    private final String[] slots;
+    private final List<String> placeholders;
+
+    private TextTemplate(String source, String[] literals, String[] slots) {
+        this.source = source;
+        this.literals = literals;
+        this.slots = slots;
+        List<String> unique = new ArrayList<>();
+        for (String slot : slots) {
+            if (!unique.contains(slot)) {
+                unique.add(slot);
+            }
+        }
+        this.placeholders = Collections.unmodifiableList(unique);
+    }
+
+    public static TextTemplate compile(String source) {
+        if (source == null) {
+            source = "";
+        }
+
+        List<String> literals = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        Matcher matcher = ComponentTemplate.PLACEHOLDER_PATTERN.matcher(source);
+        int last = 0;
+        while (matcher.find()) {
+            literals.add(source.substring(last, matcher.start()));
+            slots.add(matcher.group(1));
+            last = matcher.end();
+        }
+        literals.add(source.substring(last));
+
+        return new TextTemplate(source, literals.toArray(new String[0]), slots.toArray(new String[0]));
+    }
+
+    /**
+     * Renders the template. A {@code null} value keeps the placeholder as written.
+     */
+    public String render(Function<String, String> values) {
+        if (slots.length == 0) {
+            return source;
+        }
+
+        StringBuilder builder = new StringBuilder(source.length() + 16);
+        for (int i = 0; i < slots.length; i++) {
+            builder.append(literals[i]);
+            String value = values.apply(slots[i]);
+            if (value == null) {
+                builder.append('%').append(slots[i]).append('%');
+            } else {
+                builder.append(value);
+            }
+        }
+        return builder.append(literals[slots.length]).toString();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public List<String> getPlaceholders() {
+        return placeholders;
+    }
+
+    public boolean isStatic() {
+        return slots.length == 0;
+    }
+}
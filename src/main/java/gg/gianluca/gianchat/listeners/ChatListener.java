@@ -2,130 +2,209 @@ package gg.gianluca.gianchat.listeners;
 
 import gg.gianluca.gianchat.GianChat;
 import gg.gianluca.gianchat.events.GianChatChatEvent;
+import gg.gianluca.gianchat.format.ChatFanout;
+import gg.gianluca.gianchat.format.ChatFormat;
+import gg.gianluca.gianchat.format.PlaceholderClassifier;
+import gg.gianluca.gianchat.mentions.MentionContext;
+import gg.gianluca.gianchat.stats.Stage;
+import gg.gianluca.gianchat.stats.StatisticsManager;
 import io.papermc.paper.event.player.AsyncChatEvent;
 import me.clip.placeholderapi.PlaceholderAPI;
+import net.kyori.adventure.audience.Audience;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 import net.kyori.adventure.text.minimessage.MiniMessage;
-import net.kyori.adventure.text.event.ClickEvent;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerCommandSendEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
 
 public class ChatListener implements Listener {
     private final GianChat plugin;
-    private boolean consoleEnabled;
-    private String consoleFormat;
 
     public ChatListener(GianChat plugin) {
         this.plugin = plugin;
-        loadConsoleConfig();
-    }
-
-    public void loadConsoleConfig() {
-        this.consoleEnabled = plugin.getConfig().getBoolean("send-to-console.enabled", true);
-        this.consoleFormat = plugin.getConfig().getString("send-to-console.format", "[GianChat] %player% -> %message%");
     }
 
     @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
     public void onChat(AsyncChatEvent event) {
         event.setCancelled(true);
         
+        StatisticsManager statistics = plugin.getStatistics();
+        long started = statistics.start();
         Player player = event.getPlayer();
         String message = PlainTextComponentSerializer.plainText().serialize(event.message());
         
-        // Send to console if enabled
-        if (consoleEnabled) {
-            String consoleMessage = consoleFormat
-                .replace("%player%", player.getName())
-                .replace("%message%", message);
-            plugin.getLogger().info(consoleMessage);
-        }
+        // Written to the chat log and the console by the log writer thread
+        plugin.getChatLogWriter().log(player.getName(), message);
         
         plugin.getFormatManager().getFormatForPlayer(player).ifPresent(format -> {
-            // Process mentions first
-            Component messageComponent = MiniMessage.miniMessage().deserialize(message);
-            String rawMessage = message;
-            Component processedMessage = plugin.getMentionManager().processMentions(player, messageComponent, rawMessage);
-            
-            // Get the format string and process PlaceholderAPI placeholders first
-            String formatStr = MiniMessage.miniMessage().serialize(format.buildComponent());
-            formatStr = PlaceholderAPI.setPlaceholders(player, formatStr);
+            // Parse the message content once, the format itself is already compiled
+            long time = started;
+            Component messageComponent = MiniMessage.miniMessage().deserialize(
+                plugin.getPlaceholderSnapshots().setPlaceholders(player, message));
+            time = statistics.record(Stage.CHAT_PARSE, time);
+            MentionContext mentions = plugin.getMentionManager().processMentions(player, messageComponent);
+            Component processedMessage = mentions.message();
+            time = statistics.record(Stage.CHAT_MENTIONS, time);
             
-            // Process message with PlaceholderAPI
-            String processedMessageStr = PlainTextComponentSerializer.plainText().serialize(processedMessage);
-            String papiProcessedMessage = PlaceholderAPI.setPlaceholders(player, processedMessageStr);
+            // Sender placeholders are resolved once and shared by every viewer
+            Map<String, String> senderValues = new HashMap<>();
+            Function<String, String> senderResolver = placeholder -> senderValues.computeIfAbsent(placeholder,
+                key -> resolveSenderPlaceholder(format, player, key));
             
-            // Create the message component with processed placeholders
-            Component messageContentComponent = MiniMessage.miniMessage().deserialize(papiProcessedMessage);
-            
-            // Add click event if configured
-            if (format.getMessageClickEvent() != null) {
-                String value = PlaceholderAPI.setPlaceholders(player, format.getMessageClickEvent().value());
-                messageContentComponent = messageContentComponent.clickEvent(ClickEvent.clickEvent(
-                    format.getMessageClickEvent().action(),
-                    value
-                ));
-            }
-            
-            // Replace %message% placeholder in the format with the actual message
-            String finalStr = formatStr.replace("%message%", MiniMessage.miniMessage().serialize(messageContentComponent));
-            Component finalMessage = MiniMessage.miniMessage().deserialize(finalStr);
+            Component finalMessage = format.render(senderResolver, processedMessage);
+            time = statistics.record(Stage.CHAT_RENDER, time);
             
             // Call our custom event directly since it's now async
             GianChatChatEvent chatEvent = new GianChatChatEvent(player, finalMessage, format.getName());
             Bukkit.getPluginManager().callEvent(chatEvent);
+            statistics.record(Stage.CHAT_EVENT, time);
             
             if (!chatEvent.isCancelled()) {
-                // Send message to all players who haven't ignored the sender
-                for (var viewer : event.viewers()) {
-                    if (viewer instanceof Player recipient && !plugin.getPrivateMessageManager().hasPlayerIgnored(recipient, player)) {
-                        // Get personalized message for the recipient if they were mentioned
-                        Component personalMessage = plugin.getMentionManager().getPersonalizedMessage(processedMessage, recipient);
-                        String personalizedStr = formatStr.replace("%message%", MiniMessage.miniMessage().serialize(personalMessage));
-                        // Process PlaceholderAPI placeholders for the recipient
-                        personalizedStr = PlaceholderAPI.setPlaceholders(recipient, personalizedStr);
-                        Component personalizedFinal = MiniMessage.miniMessage().deserialize(personalizedStr);
-                        recipient.sendMessage(personalizedFinal);
+                // Players ignoring the sender are taken out of the viewers, instead of checking every viewer
+                Set<Audience> viewers = event.viewers();
+                for (UUID ignorer : plugin.getPrivateMessageManager().getIgnoreIndex().getIgnorers(player.getUniqueId())) {
+                    Player ignoringPlayer = Bukkit.getPlayer(ignorer);
+                    if (ignoringPlayer != null) {
+                        viewers.remove(ignoringPlayer);
+                    }
+                }
+                
+                List<Player> recipients = new ArrayList<>(viewers.size());
+                for (Audience viewer : viewers) {
+                    if (viewer instanceof Player recipient) {
+                        recipients.add(recipient);
                     }
                 }
+                
+                // Recipients that see the same line share a single render
+                Runnable fanout = () -> {
+                    long fanoutStarted = statistics.start();
+                    ChatFanout.deliver(format, senderResolver, processedMessage, finalMessage, mentions.variants(),
+                        mentions.variantOf(), recipients, (recipient, placeholder) -> resolveViewerPlaceholder(player, recipient, placeholder));
+                    statistics.record(Stage.CHAT_FANOUT, fanoutStarted);
+                };
+                
+                // Spies can follow public chat containing keywords
+                plugin.getPrivateMessageManager().getSocialSpy().deliverKeywordHit(player, message, processedMessage);
+                
+                if (format.hasRelationalPlaceholders()) {
+                    // Relational placeholders depend on both players and can't be snapshotted
+                    Bukkit.getScheduler().runTask(plugin, fanout);
+                } else {
+                    fanout.run();
+                }
             }
-            
-            // Clean up personalized messages
-            plugin.getMentionManager().clearPersonalizedMessage(processedMessage);
         });
+        
+        statistics.record(Stage.CHAT_TOTAL, started);
+        statistics.countChatMessage();
+    }
+
+    private String resolveSenderPlaceholder(ChatFormat format, Player sender, String placeholder) {
+        return switch (format.getScope(placeholder)) {
+            case STATIC -> plugin.getFormatManager().getStaticPlaceholder(placeholder);
+            case VIEWER -> null;
+            default -> plugin.getPlaceholderSnapshots().get(sender, placeholder);
+        };
+    }
+
+    private String resolveViewerPlaceholder(Player sender, Player viewer, String placeholder) {
+        if (placeholder.startsWith(PlaceholderClassifier.RELATIONAL_PREFIX)) {
+            // Only reached on the main thread, see onChat
+            return PlaceholderAPI.setRelationalPlaceholders(viewer, sender, "%" + placeholder + "%");
+        }
+        return plugin.getPlaceholderSnapshots().get(viewer, PlaceholderClassifier.viewerPlaceholder(placeholder));
     }
 
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
         
+        // Drop cached placeholders from a previous session
+        plugin.getPlaceholderCache().invalidate(player);
+        plugin.getPlayerNames().update(player);
+        
         // Load player data
         plugin.getDataManager().loadPlayerData(player);
         
         // Load format
         String format = plugin.getDataManager().getPlayerData(player).getFormat();
-        if (format != null) {
+        if (format != null && plugin.getFormatManager().getFormat(format) != null) {
             plugin.getFormatManager().setPlayerFormat(player, plugin.getFormatManager().getFormat(format));
+        } else {
+            plugin.getFormatManager().refreshPlayerFormat(player);
         }
         
         // Load message settings
         plugin.getPrivateMessageManager().loadPlayerData(player);
         
+        // Messages sent while the player was offline
+        plugin.getPrivateMessageManager().getMail().deliver(player);
+        
         // Load mention settings
         plugin.getMentionManager().loadPlayerData(player);
+        
+        // Resolve chat placeholders before the player can talk
+        plugin.getPlaceholderSnapshots().refresh(player);
+    }
+
+    @EventHandler(priority = EventPriority.HIGH)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        
+        // Player data is loaded before joining when the storage doesn't keep every player
+        if (!plugin.getDataManager().preloadPlayerData(event.getUniqueId())) {
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER,
+                plugin.getMessageManager().getMessage("error.data_load_failed"));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLoginResult(AsyncPlayerPreLoginEvent event) {
+        // Another plugin may deny the login after the data was loaded
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            plugin.getDataManager().discardPreloadedPlayerData(event.getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLoginResult(PlayerLoginEvent event) {
+        // Bans, the whitelist and a full server deny the login after the pre-login
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            plugin.getDataManager().discardPreloadedPlayerData(event.getPlayer().getUniqueId());
+        }
+    }
+
+    @EventHandler
+    public void onCommandsSent(PlayerCommandSendEvent event) {
+        // Permission plugins resend the command tree when permissions change
+        plugin.getFormatManager().refreshPlayerFormat(event.getPlayer());
     }
 
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
         Player player = event.getPlayer();
         
-        // Save all player data
+        // Queue the player data for the next background save
         plugin.getDataManager().savePlayerData(player);
         
         // Clean up format data
@@ -133,8 +212,17 @@ public class ChatListener implements Listener {
         
         // Clean up message manager data
         plugin.getPrivateMessageManager().removePlayerData(player);
+        plugin.getPrivateMessageManager().getMail().unload(player);
         
         // Clean up mention manager data
         plugin.getMentionManager().removePlayerData(player);
+        plugin.getPlayerNames().remove(player);
+        
+        // Clean up cached placeholders
+        plugin.getPlaceholderCache().invalidate(player);
+        plugin.getPlaceholderSnapshots().remove(player);
+        
+        // Drop the player data last, the cleanup above may still change it
+        plugin.getDataManager().unloadPlayerData(player);
     }
 }
\ No newline at end of file
@@ -0,0 +1,271 @@
+package gg.gianluca.gianchat.logging;
+
+import gg.gianluca.gianchat.GianChat;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes chat to daily log files in {@code plugins/GianChat/logs}.
+ * The chat thread only adds an entry to a lock-free ring buffer. A single writer
+ * thread drains it every flush interval, writes the batch in one call and
+ * compresses the files of previous days. The console mirror is fed by the same
+ * thread and is limited to a number of lines per second.
+ */
+public class ChatLogWriter {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private final GianChat plugin;
+    private final File logsDirectory;
+    private final RingBuffer<ChatLogEntry> buffer;
+    private final LongAdder dropped;
+    private final StringBuilder batch;
+    private volatile boolean fileEnabled;
+    private volatile boolean consoleEnabled;
+    private volatile String fileFormat;
+    private volatile String consoleFormat;
+    private volatile long flushIntervalNanos;
+    private volatile boolean compress;
+    private volatile int consoleLinesPerSecond;
+    private volatile boolean running;
+    private Thread thread;
+
+    // Only used by the writer thread
+    private FileChannel channel;
+    private LocalDate currentDate;
+    private long mirrorSecond;
+    private int mirroredLines;
+    private int suppressedLines;
+
+    public ChatLogWriter(GianChat plugin) {
+        this.plugin = plugin;
+        this.logsDirectory = new File(plugin.getDataFolder(), "logs");
+        this.buffer = new RingBuffer<>(plugin.getConfig().getInt("chat-log.buffer-size", 8192));
+        this.dropped = new LongAdder();
+        this.batch = new StringBuilder(4096);
+        loadConfig();
+    }
+
+    public void loadConfig() {
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("chat-log");
+        fileEnabled = config == null || config.getBoolean("enabled", true);
+        fileFormat = config != null ? config.getString("format", "%player%: %message%") : "%player%: %message%";
+        flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+            Math.max(50, config != null ? config.getLong("flush-interval", 1000) : 1000));
+        compress = config == null || config.getBoolean("compress", true);
+
+        consoleEnabled = plugin.getConfig().getBoolean("send-to-console.enabled", true);
+        consoleFormat = plugin.getConfig().getString("send-to-console.format", "[GianChat] %player% -> %message%");
+        consoleLinesPerSecond = plugin.getConfig().getInt("send-to-console.max-lines-per-second", 20);
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "GianChat Chat Log Writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Writes every pending entry and stops the writer thread.
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues a chat message to be logged. Safe to call from any thread, never blocks.
+     */
+    public void log(String player, String message) {
+        if (!fileEnabled && !consoleEnabled) {
+            return;
+        }
+        if (!buffer.offer(new ChatLogEntry(System.currentTimeMillis(), player, message))) {
+            dropped.increment();
+        }
+    }
+
+    private void run() {
+        compressOldLogs();
+        while (running) {
+            drain();
+            LockSupport.parkNanos(this, flushIntervalNanos);
+        }
+        drain();
+        closeChannel();
+    }
+
+    private void drain() {
+        ChatLogEntry entry;
+        while ((entry = buffer.poll()) != null) {
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.timestamp()), ZoneId.systemDefault());
+            if (fileEnabled) {
+                if (!time.toLocalDate().equals(currentDate)) {
+                    write();
+                    rotate(time.toLocalDate());
+                }
+                batch.append('[').append(TIME_FORMAT.format(time)).append("] ")
+                    .append(entry.format(fileFormat)).append('\n');
+            }
+            if (consoleEnabled) {
+                mirror(entry);
+            }
+        }
+        write();
+
+        long lost = dropped.sumThenReset();
+        if (lost > 0) {
+            plugin.getLogger().warning("Chat log buffer is full, " + lost + " chat lines were not logged");
+        }
+    }
+
+    private void mirror(ChatLogEntry entry) {
+        long second = TimeUnit.MILLISECONDS.toSeconds(entry.timestamp());
+        if (second != mirrorSecond) {
+            if (suppressedLines > 0) {
+                plugin.getLogger().info(suppressedLines + " chat lines were not mirrored to the console");
+            }
+            mirrorSecond = second;
+            mirroredLines = 0;
+            suppressedLines = 0;
+        }
+
+        if (consoleLinesPerSecond > 0 && mirroredLines >= consoleLinesPerSecond) {
+            suppressedLines++;
+            return;
+        }
+        mirroredLines++;
+        plugin.getLogger().info(entry.format(consoleFormat));
+    }
+
+    private void write() {
+        if (batch.isEmpty() || channel == null) {
+            batch.setLength(0);
+            return;
+        }
+
+        try {
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(batch.toString());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to write chat log: " + e.getMessage());
+        }
+        batch.setLength(0);
+    }
+
+    private void rotate(LocalDate date) {
+        LocalDate previousDate = currentDate;
+        closeChannel();
+        currentDate = date;
+
+        if (compress && previousDate != null) {
+            compressLog(getLogFile(previousDate));
+        }
+
+        try {
+            logsDirectory.mkdirs();
+            channel = FileChannel.open(getLogFile(date), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to open chat log: " + e.getMessage());
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to close chat log: " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    /**
+     * Compresses logs left behind by previous days, e.g. when the server was stopped at midnight.
+     */
+    private void compressOldLogs() {
+        if (!compress) {
+            return;
+        }
+        File[] files = logsDirectory.listFiles((dir, name) -> name.endsWith(".log"));
+        if (files == null) {
+            return;
+        }
+
+        Path today = getLogFile(LocalDate.now());
+        for (File file : files) {
+            if (!file.toPath().equals(today)) {
+                compressLog(file.toPath());
+            }
+        }
+    }
+
+    private void compressLog(Path log) {
+        if (!Files.exists(log)) {
+            return;
+        }
+
+        String name = log.getFileName().toString();
+        Path target = log.resolveSibling(name + ".gz");
+        for (int i = 1; Files.exists(target); i++) {
+            target = log.resolveSibling(name.substring(0, name.length() - 4) + "-" + i + ".log.gz");
+        }
+
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(target))) {
+            Files.copy(log, output);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to compress chat log " + name + ": " + e.getMessage());
+            return;
+        }
+
+        try {
+            Files.delete(log);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to delete compressed chat log " + name + ": " + e.getMessage());
+        }
+    }
+
+    private Path getLogFile(LocalDate date) {
+        return new File(logsDirectory, date + ".log").toPath();
+    }
+
+    private record ChatLogEntry(long timestamp, String player, String message) {
+        String format(String format) {
+            return format.replace("%player%", player).replace("%message%", message);
+        }
+    }
+}
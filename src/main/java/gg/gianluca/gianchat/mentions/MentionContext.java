@@ -0,0 +1,49 @@
+package gg.gianluca.gianchat.mentions;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The mentions of a single chat message: the message everyone sees and the
+ * copies shown to mentioned players. Immutable, so it can be passed between
+ * threads and is simply dropped once the message was delivered.
+ *
+ * @param message The message shown to players that weren't mentioned
+ * @param variants The distinct copies shown to mentioned players
+ * @param variantOf The index of the copy each mentioned player sees
+ */
+public record MentionContext(Component message, List<Component> variants, Map<UUID, Integer> variantOf) {
+
+    public MentionContext {
+        variants = List.copyOf(variants);
+        variantOf = Map.copyOf(variantOf);
+    }
+
+    /**
+     * Creates a context for a message without mentions.
+     */
+    public static MentionContext of(Component message) {
+        return new MentionContext(message, List.of(), Map.of());
+    }
+
+    /**
+     * Returns the index of the copy a player sees, or -1 if they weren't mentioned.
+     */
+    public int getVariant(UUID uuid) {
+        Integer variant = variantOf.get(uuid);
+        return variant != null ? variant : -1;
+    }
+
+    public Component getMessage(Player viewer) {
+        int variant = getVariant(viewer.getUniqueId());
+        return variant >= 0 ? variants.get(variant) : message;
+    }
+
+    public boolean isMentioned(Player player) {
+        return variantOf.containsKey(player.getUniqueId());
+    }
+}
@@ -0,0 +1,195 @@
+package gg.gianluca.gianchat.mentions;
+
+import gg.gianluca.gianchat.GianChat;
+import gg.gianluca.gianchat.format.ChatFormat;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Groups that can be mentioned at once: {@code @everyone}, players with a permission
+ * and players using a chat format. Members are kept in sets updated on join, quit,
+ * format and permission changes, so a group mention never scans the online players.
+ * Sets are written on the main thread and read by async chat.
+ */
+public class MentionGroups {
+    private final GianChat plugin;
+    private volatile Map<String, Group> groups;
+    private ConfigurationSection config;
+    private final Map<UUID, Long> lastMention;
+    private volatile boolean enabled;
+    private volatile long cooldown;
+
+    /**
+     * @param filter Whether a player belongs to the group
+     * @param members The online players in the group
+     */
+    private record Group(String name, Predicate<Player> filter, Set<UUID> members) {
+    }
+
+    public MentionGroups(GianChat plugin) {
+        this.plugin = plugin;
+        this.groups = Map.of();
+        this.lastMention = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Loads the groups and fills them with the online players. Must be called on the main thread.
+     */
+    public void loadConfig(ConfigurationSection config) {
+        this.config = config;
+        Map<String, Group> loaded = new ConcurrentHashMap<>();
+        enabled = config != null && config.getBoolean("enabled", true);
+        cooldown = config != null ? Math.max(0, config.getLong("cooldown", 30)) * 1000 : 0;
+
+        if (enabled) {
+            if (config.getBoolean("everyone", true)) {
+                addGroup(loaded, "everyone", player -> true);
+            }
+
+            if (config.getBoolean("formats", true)) {
+                for (ChatFormat format : plugin.getFormatManager().getFormats()) {
+                    String name = format.getName();
+                    addGroup(loaded, name, player -> plugin.getFormatManager().getFormatForPlayer(player)
+                        .map(current -> current.getName().equals(name))
+                        .orElse(false));
+                }
+            }
+
+            // Permission groups take the name over a format with the same name
+            ConfigurationSection permissions = config.getConfigurationSection("permissions");
+            if (permissions != null) {
+                for (String name : permissions.getKeys(false)) {
+                    String permission = permissions.getString(name);
+                    if (permission != null && !permission.isEmpty()) {
+                        addGroup(loaded, name, player -> player.hasPermission(permission));
+                    }
+                }
+            }
+        }
+
+        groups = loaded;
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            update(player);
+        }
+    }
+
+    /**
+     * Rebuilds the groups from the last loaded config, after formats changed.
+     * Must be called on the main thread.
+     */
+    public void rebuild() {
+        loadConfig(config);
+    }
+
+    private void addGroup(Map<String, Group> groups, String name, Predicate<Player> filter) {
+        groups.put(NameAutomaton.fold(name), new Group(name, filter, ConcurrentHashMap.newKeySet()));
+    }
+
+    /**
+     * Adds a player to or removes them from every group. Must be called on the main thread.
+     */
+    public void update(Player player) {
+        for (Group group : groups.values()) {
+            if (group.filter().test(player)) {
+                group.members().add(player.getUniqueId());
+            } else {
+                group.members().remove(player.getUniqueId());
+            }
+        }
+    }
+
+    /**
+     * Removes a player from every group. Must be called on the main thread.
+     */
+    public void remove(Player player) {
+        for (Group group : groups.values()) {
+            group.members().remove(player.getUniqueId());
+        }
+        lastMention.remove(player.getUniqueId());
+    }
+
+    /**
+     * Returns the groups a player may mention right now, keyed by their folded name.
+     * Players need {@code gianchat.mentions.group.<name>} for each group.
+     */
+    public Map<String, String> getMentionableGroups(Player sender) {
+        if (!enabled || groups.isEmpty() || isOnCooldown(sender)) {
+            return Map.of();
+        }
+
+        Map<String, String> mentionable = new HashMap<>();
+        for (Map.Entry<String, Group> entry : groups.entrySet()) {
+            String name = entry.getValue().name();
+            if (sender.hasPermission("gianchat.mentions.group." + name.toLowerCase())) {
+                mentionable.put(entry.getKey(), name);
+            }
+        }
+        return mentionable;
+    }
+
+    private boolean isOnCooldown(Player sender) {
+        if (cooldown <= 0 || sender.hasPermission("gianchat.mentions.group.bypass-cooldown")) {
+            return false;
+        }
+        Long last = lastMention.get(sender.getUniqueId());
+        return last != null && System.currentTimeMillis() - last < cooldown;
+    }
+
+    /**
+     * Starts a player's cooldown after they mentioned a group.
+     */
+    public void markMentioned(Player sender) {
+        lastMention.put(sender.getUniqueId(), System.currentTimeMillis());
+    }
+
+    /**
+     * Finds {@code @<group>} mentions in a message. Safe to call from any thread.
+     *
+     * @param mentionable The groups that may be matched, from {@link #getMentionableGroups(Player)}
+     * @param mention Creates the component shown in place of a group
+     */
+    public List<MentionMatch> find(String text, Map<String, String> mentionable, Function<String, Component> mention) {
+        List<MentionMatch> matches = null;
+        for (int at = text.indexOf('@'); at >= 0; at = text.indexOf('@', at + 1)) {
+            if (at > 0 && isNameChar(text.charAt(at - 1))) {
+                continue;
+            }
+
+            int end = at + 1;
+            while (end < text.length() && isNameChar(text.charAt(end))) {
+                end++;
+            }
+
+            String key = NameAutomaton.fold(text.substring(at + 1, end));
+            String name = mentionable.get(key);
+            Group group = name != null ? groups.get(key) : null;
+            if (group == null || group.members().isEmpty()) {
+                continue;
+            }
+
+            if (matches == null) {
+                matches = new ArrayList<>();
+            }
+            // The live members, copying them would copy every online player for @everyone
+            matches.add(new MentionMatch(at, end, Collections.unmodifiableSet(group.members()), mention.apply(name)));
+        }
+        return matches != null ? matches : List.of();
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+    }
+}
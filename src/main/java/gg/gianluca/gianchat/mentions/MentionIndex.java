@@ -0,0 +1,83 @@
+package gg.gianluca.gianchat.mentions;
+
+import gg.gianluca.gianchat.GianChat;
+import gg.gianluca.gianchat.players.PlayerNameRegistry;
+import gg.gianluca.gianchat.players.PlayerNames;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps a {@link NameAutomaton} of every online player's name and display name.
+ * Changes come from the {@link PlayerNameRegistry} on the main thread and the
+ * automaton is rebuilt at most once per tick, then published for async chat
+ * to read without locking.
+ */
+public class MentionIndex implements PlayerNameRegistry.Listener {
+    private final GianChat plugin;
+    private final Map<UUID, List<String>> names;
+    private volatile NameAutomaton automaton;
+    private BukkitTask task;
+    private boolean dirty;
+
+    public MentionIndex(GianChat plugin) {
+        this.plugin = plugin;
+        this.names = new HashMap<>();
+        this.automaton = NameAutomaton.EMPTY;
+    }
+
+    public void start() {
+        stop();
+        for (PlayerNames playerNames : plugin.getPlayerNames().getAll()) {
+            namesChanged(playerNames);
+        }
+        rebuild();
+        plugin.getPlayerNames().addListener(this);
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private void tick() {
+        if (dirty) {
+            rebuild();
+        }
+    }
+
+    @Override
+    public void namesChanged(PlayerNames playerNames) {
+        String name = NameAutomaton.fold(playerNames.name());
+        String folded = NameAutomaton.fold(playerNames.displayName().trim());
+        List<String> foldedNames = folded.isEmpty() || folded.equals(name) ? List.of(name) : List.of(name, folded);
+        if (!foldedNames.equals(names.put(playerNames.uuid(), foldedNames))) {
+            dirty = true;
+        }
+    }
+
+    @Override
+    public void playerRemoved(UUID uuid) {
+        if (names.remove(uuid) != null) {
+            dirty = true;
+        }
+    }
+
+    private void rebuild() {
+        automaton = new NameAutomaton(NameAutomaton.group(names));
+        dirty = false;
+    }
+
+    /**
+     * Finds every online player named in a message. Safe to call from any thread.
+     */
+    public List<MentionMatch> find(String message) {
+        return automaton.find(message);
+    }
+}
@@ -2,28 +2,32 @@ package gg.gianluca.gianchat.mentions;
 
 import gg.gianluca.gianchat.GianChat;
 import gg.gianluca.gianchat.events.GianChatPlayerMentionEvent;
-import me.clip.placeholderapi.PlaceholderAPI;
+import gg.gianluca.gianchat.format.ComponentTemplate;
 import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.TextDecoration;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 import net.kyori.adventure.title.Title;
 import org.bukkit.Bukkit;
 import org.bukkit.Sound;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
-import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 
 import java.time.Duration;
-import java.util.regex.Pattern;
 import java.util.UUID;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Function;
 
 public class MentionManager {
     private final GianChat plugin;
     private boolean enabled;
     private String replaceMentionWith;
+    private ComponentTemplate mentionTemplate = ComponentTemplate.EMPTY;
     private boolean soundEnabled;
     private Sound mentionSound;
     private float soundVolume;
@@ -37,11 +41,24 @@ public class MentionManager {
     private boolean actionBarEnabled;
     private String actionBarText;
     private Set<UUID> disabledMentions = new HashSet<>();
-    private final Map<Component, Map<UUID, Component>> personalizedMessages = new HashMap<>();
+    private final MentionIndex mentionIndex;
+    private final MentionNotifier notifier;
+    private final MentionGroups groups;
+
+    /**
+     * Title and action bar of a mention, rendered once per mentioner.
+     * Either is null when disabled in the config.
+     */
+    record Effects(Title title, Component actionBar) {}
 
     public MentionManager(GianChat plugin) {
         this.plugin = plugin;
+        this.mentionIndex = new MentionIndex(plugin);
+        this.notifier = new MentionNotifier(plugin, this);
+        this.groups = new MentionGroups(plugin);
         loadConfig();
+        mentionIndex.start();
+        notifier.start();
     }
 
     @SuppressWarnings("deprecation")
@@ -52,6 +69,7 @@ public class MentionManager {
 
         enabled = config.getBoolean("enabled", true);
         replaceMentionWith = config.getString("replace-mention-with", "<yellow>@%mentioned_player_name%");
+        mentionTemplate = ComponentTemplate.compile(replaceMentionWith);
 
         // Load sound settings
         ConfigurationSection soundConfig = config.getConfigurationSection("sound");
@@ -87,117 +105,163 @@ public class MentionManager {
             actionBarText = actionBarConfig.getString("message", 
                 "<yellow>You were mentioned by %mentioner_player_name%!</yellow>");
         }
+
+        notifier.loadConfig(config.getConfigurationSection("notifications"));
+        groups.loadConfig(config.getConfigurationSection("groups"));
     }
 
-    public Component processMentions(Player sender, Component originalMessage, String rawMessage) {
+    /**
+     * Finds the players mentioned in a chat message and builds the copy each of them sees.
+     * Safe to call from the async chat thread.
+     */
+    public MentionContext processMentions(Player sender, Component originalMessage) {
         if (!enabled || !sender.hasPermission("gianchat.mentions")) {
-            return originalMessage;
+            return MentionContext.of(originalMessage);
+        }
+
+        // Group mentions share one component per group for the whole message
+        Function<String, List<MentionMatch>> finder = mentionIndex::find;
+        Map<String, String> mentionableGroups = groups.getMentionableGroups(sender);
+        Map<String, Component> groupMentions = new HashMap<>();
+        if (!mentionableGroups.isEmpty()) {
+            finder = text -> {
+                List<MentionMatch> groupMatches = groups.find(text, mentionableGroups,
+                    group -> groupMentions.computeIfAbsent(group, name -> createMention(sender.getName(), name)));
+                if (groupMatches.isEmpty()) {
+                    return mentionIndex.find(text);
+                }
+                List<MentionMatch> matches = new ArrayList<>(mentionIndex.find(text));
+                matches.addAll(groupMatches);
+                return matches;
+            };
         }
 
-        Component processedMessage = originalMessage;
-        Map<UUID, Component> personalizedMessages = new HashMap<>();
+        // Every mention is located in a single pass over the message
+        MentionedMessage mentionedMessage = MentionedMessage.scan(originalMessage, finder, sender.getUniqueId());
+        if (mentionedMessage == null) {
+            return MentionContext.of(originalMessage);
+        }
+        if (!groupMentions.isEmpty()) {
+            groups.markMentioned(sender);
+        }
 
-        for (Player onlinePlayer : Bukkit.getOnlinePlayers()) {
-            // Skip if player is trying to mention themselves
-            if (sender.equals(onlinePlayer)) {
+        // Players ignoring the sender don't see the message, so they aren't notified either
+        Set<UUID> ignorers = plugin.getPrivateMessageManager().getIgnoreIndex().getIgnorers(sender.getUniqueId());
+        List<Component> variants = new ArrayList<>();
+        Map<UUID, Integer> variantOf = new HashMap<>();
+        // Players only mentioned through the same groups share a single copy
+        Map<BitSet, Integer> groupVariants = new HashMap<>();
+        for (UUID uuid : mentionedMessage.getMentioned()) {
+            Player mentioned = Bukkit.getPlayer(uuid);
+            if (mentioned == null || ignorers.contains(uuid)) {
                 continue;
             }
-            
-            String playerName = onlinePlayer.getName();
-            String displayName = PlainTextComponentSerializer.plainText().serialize(onlinePlayer.displayName());
-            
-            // Check if the message contains the player's name or display name
-            if (containsIgnoreCase(rawMessage, playerName) || containsIgnoreCase(rawMessage, displayName)) {
-                // Process PlaceholderAPI placeholders for both players
-                Map<String, String> placeholders = new HashMap<>();
-                placeholders.put("mentioned_player_name", PlaceholderAPI.setPlaceholders(onlinePlayer, "%player_name%"));
-                placeholders.put("mentioner_player_name", PlaceholderAPI.setPlaceholders(sender, "%player_name%"));
-                
-                // Replace placeholders in the mention format
-                String processedFormat = replaceMentionWith;
-                for (Map.Entry<String, String> entry : placeholders.entrySet()) {
-                    processedFormat = processedFormat.replace("%" + entry.getKey() + "%", entry.getValue());
-                }
 
-                // Create mention component
-                Component mentionComponent = MiniMessage.miniMessage().deserialize(processedFormat);
-
-                // Create personalized message for the mentioned player
-                Component personalMessage = replaceMention(processedMessage, playerName, mentionComponent);
-                personalizedMessages.put(onlinePlayer.getUniqueId(), personalMessage);
-
-                // Schedule the event and effects on the main thread
-                Bukkit.getScheduler().runTask(plugin, () -> {
-                    // Call event
-                    GianChatPlayerMentionEvent event = new GianChatPlayerMentionEvent(
-                        sender, onlinePlayer, mentionComponent, soundEnabled, titleEnabled, actionBarEnabled);
-                    Bukkit.getPluginManager().callEvent(event);
-
-                    if (!event.isCancelled()) {
-                        // Handle sound
-                        if (event.isPlaySound() && soundEnabled) {
-                            onlinePlayer.playSound(onlinePlayer.getLocation(), mentionSound, soundVolume, soundPitch);
-                        }
-
-                        // Handle title
-                        if (event.isShowTitle() && titleEnabled) {
-                            Component title = MiniMessage.miniMessage().deserialize(
-                                PlaceholderAPI.setPlaceholders(sender, titleText.replace("%mentioner_", "%")));
-                            Component subtitle = MiniMessage.miniMessage().deserialize(
-                                PlaceholderAPI.setPlaceholders(sender, subtitleText.replace("%mentioner_", "%")));
-
-                            Title.Times times = Title.Times.times(
-                                Duration.ofMillis(fadeIn * 50),
-                                Duration.ofMillis(stay * 50),
-                                Duration.ofMillis(fadeOut * 50)
-                            );
-                            onlinePlayer.showTitle(Title.title(title, subtitle, times));
-                        }
-
-                        // Handle action bar
-                        if (event.isShowActionBar() && actionBarEnabled) {
-                            Component actionBar = MiniMessage.miniMessage().deserialize(
-                                PlaceholderAPI.setPlaceholders(sender, actionBarText.replace("%mentioner_", "%")));
-                            onlinePlayer.sendActionBar(actionBar);
-                        }
-                    }
-                });
+            BitSet groupSlots = mentionedMessage.getGroupSlots(uuid);
+            if (groupSlots != null && groupSlots.isEmpty()) {
+                // Left the group while the message was being processed
+                continue;
+            }
+            Component mentionComponent;
+            Integer variant;
+            if (groupSlots != null) {
+                // Members are notified with the component of the first group they matched
+                mentionComponent = mentionedMessage.getSlotMention(groupSlots.nextSetBit(0));
+                variant = groupVariants.get(groupSlots);
+                if (variant == null) {
+                    variant = variants.size();
+                    variants.add(mentionedMessage.render(uuid, null));
+                    groupVariants.put(groupSlots, variant);
+                }
+            } else {
+                // Names are read directly, PlaceholderAPI can't be called from the async chat thread
+                mentionComponent = createMention(sender.getName(), mentioned.getName());
+                variant = variants.size();
+                variants.add(mentionedMessage.render(uuid, mentionComponent));
             }
+            variantOf.put(uuid, variant);
+
+            // The event and effects are delivered on the main thread
+            notifier.queue(sender, mentioned, mentionComponent);
+        }
+
+        return new MentionContext(originalMessage, variants, variantOf);
+    }
+
+    private Component createMention(String sender, String mentioned) {
+        Component mention = mentionTemplate.render(placeholder -> switch (placeholder) {
+            case "mentioned_player_name" -> Component.text(mentioned);
+            case "mentioner_player_name" -> Component.text(sender);
+            default -> Component.text("%" + placeholder + "%");
+        });
+
+        // Decorations of the surrounding text shouldn't bleed into the mention
+        for (TextDecoration decoration : TextDecoration.values()) {
+            mention = mention.decorationIfAbsent(decoration, TextDecoration.State.FALSE);
+        }
+        return mention;
+    }
+
+    Effects renderEffects(Player sender) {
+        Title title = null;
+        if (titleEnabled) {
+            Component titleComponent = MiniMessage.miniMessage().deserialize(
+                plugin.getPlaceholderCache().setPlaceholders(sender, titleText.replace("%mentioner_", "%")));
+            Component subtitle = MiniMessage.miniMessage().deserialize(
+                plugin.getPlaceholderCache().setPlaceholders(sender, subtitleText.replace("%mentioner_", "%")));
+
+            Title.Times times = Title.Times.times(
+                Duration.ofMillis(fadeIn * 50),
+                Duration.ofMillis(stay * 50),
+                Duration.ofMillis(fadeOut * 50)
+            );
+            title = Title.title(titleComponent, subtitle, times);
         }
 
-        // Store the personalized messages for later use
-        this.personalizedMessages.put(processedMessage, personalizedMessages);
-        return processedMessage;
+        Component actionBar = null;
+        if (actionBarEnabled) {
+            actionBar = MiniMessage.miniMessage().deserialize(
+                plugin.getPlaceholderCache().setPlaceholders(sender, actionBarText.replace("%mentioner_", "%")));
+        }
+        return new Effects(title, actionBar);
+    }
+
+    void notifyMention(Player sender, Player mentioned, Component mentionComponent, Effects effects) {
+        // Call event
+        GianChatPlayerMentionEvent event = new GianChatPlayerMentionEvent(
+            sender, mentioned, mentionComponent, soundEnabled, titleEnabled, actionBarEnabled);
+        Bukkit.getPluginManager().callEvent(event);
+
+        if (event.isCancelled()) {
+            return;
+        }
+
+        // Handle sound
+        if (event.isPlaySound() && soundEnabled) {
+            mentioned.playSound(mentioned.getLocation(), mentionSound, soundVolume, soundPitch);
+        }
+
+        // Handle title
+        if (event.isShowTitle() && effects.title() != null) {
+            mentioned.showTitle(effects.title());
+        }
+
+        // Handle action bar
+        if (event.isShowActionBar() && effects.actionBar() != null) {
+            mentioned.sendActionBar(effects.actionBar());
+        }
+    }
+
+    public MentionIndex getMentionIndex() {
+        return mentionIndex;
     }
 
-    private boolean containsIgnoreCase(String text, String search) {
-        return Pattern.compile(Pattern.quote(search), Pattern.CASE_INSENSITIVE)
-            .matcher(text)
-            .find();
+    public MentionNotifier getNotifier() {
+        return notifier;
     }
 
-    private Component replaceMention(Component original, String playerName, Component replacement) {
-        String originalString = MiniMessage.miniMessage().serialize(original);
-        
-        // Create a pattern that matches the exact player name with word boundaries
-        String pattern = "(?i)\\b" + Pattern.quote(playerName) + "\\b";
-        
-        // Find the match and its position
-        java.util.regex.Matcher matcher = Pattern.compile(pattern).matcher(originalString);
-        if (!matcher.find()) return original;
-        
-        // Split the string into three parts: before, match, and after
-        String before = originalString.substring(0, matcher.start());
-        String after = originalString.substring(matcher.end());
-        
-        // Get the replacement as a MiniMessage string and wrap it to prevent color bleeding
-        String replacementStr = "<reset>" + MiniMessage.miniMessage().serialize(replacement) + "<reset>";
-        
-        // Combine the parts while preserving formatting
-        String replacedString = before + replacementStr + after;
-        
-        // Parse the final string back into a component
-        return MiniMessage.miniMessage().deserialize(replacedString);
+    public MentionGroups getGroups() {
+        return groups;
     }
 
     public boolean isEnabled() {
@@ -232,6 +296,8 @@ public class MentionManager {
     }
 
     public void loadPlayerData(Player player) {
+        groups.update(player);
+
         // Load mention settings from DataManager
         if (!plugin.getDataManager().getPlayerData(player).hasMentionsEnabled()) {
             disabledMentions.add(player.getUniqueId());
@@ -239,21 +305,8 @@ public class MentionManager {
     }
 
     public void removePlayerData(Player player) {
+        notifier.remove(player);
+        groups.remove(player);
         disabledMentions.remove(player.getUniqueId());
     }
-
-    public Component getPersonalizedMessage(Component baseMessage, Player viewer) {
-        Map<UUID, Component> messages = personalizedMessages.get(baseMessage);
-        if (messages != null) {
-            Component personal = messages.get(viewer.getUniqueId());
-            if (personal != null) {
-                return personal;
-            }
-        }
-        return baseMessage;
-    }
-
-    public void clearPersonalizedMessage(Component message) {
-        personalizedMessages.remove(message);
-    }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,21 @@
+package gg.gianluca.gianchat.mentions;
+
+import net.kyori.adventure.text.Component;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * A name found in a chat message.
+ *
+ * @param start The index of the first character of the name
+ * @param end The index after the last character of the name
+ * @param players The players with this name or display name, or the online members of a group
+ * @param mention The component shown to every player in a group mention, or null for player names
+ */
+public record MentionMatch(int start, int end, Collection<UUID> players, Component mention) {
+
+    public MentionMatch(int start, int end, Collection<UUID> players) {
+        this(start, end, players, null);
+    }
+}
@@ -0,0 +1,117 @@
+package gg.gianluca.gianchat.mentions;
+
+import gg.gianluca.gianchat.GianChat;
+import net.kyori.adventure.text.Component;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Delivers mention notifications on the main thread. Chat threads only queue them and
+ * a single task drains the queue once per tick, up to a budget, leaving the rest for
+ * the following ticks. A player has at most one queued notification, a newer mention
+ * replaces it, so the queue never holds more entries than there are online players.
+ * A player is notified at most once per cooldown, and the title and action bar are
+ * rendered once per mentioner instead of once per mentioned player.
+ */
+public class MentionNotifier {
+    private final GianChat plugin;
+    private final MentionManager mentionManager;
+    // Players in the order they were mentioned, each with their latest notification
+    private final Queue<UUID> queue;
+    private final Map<UUID, Notification> queued;
+    private final Map<UUID, Long> lastNotified;
+    private final Map<UUID, MentionManager.Effects> effects;
+    private BukkitTask task;
+    private volatile int perTick;
+    private volatile int cooldown;
+    private long ticks;
+
+    private record Notification(Player sender, Player mentioned, Component mention) {}
+
+    public MentionNotifier(GianChat plugin, MentionManager mentionManager) {
+        this.plugin = plugin;
+        this.mentionManager = mentionManager;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.queued = new ConcurrentHashMap<>();
+        this.lastNotified = new HashMap<>();
+        this.effects = new HashMap<>();
+        loadConfig(null);
+    }
+
+    public void loadConfig(ConfigurationSection config) {
+        perTick = Math.max(1, config != null ? config.getInt("per-tick", 50) : 50);
+        // Two notifications can never be shown in the same tick
+        cooldown = Math.max(1, config != null ? config.getInt("cooldown", 40) : 40);
+    }
+
+    public void start() {
+        stop();
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Queues a notification for the next ticks. Safe to call from any thread.
+     */
+    public void queue(Player sender, Player mentioned, Component mention) {
+        UUID uuid = mentioned.getUniqueId();
+        if (queued.put(uuid, new Notification(sender, mentioned, mention)) == null) {
+            queue.add(uuid);
+        }
+    }
+
+    /**
+     * Forgets a player's cooldown. Must be called on the main thread.
+     */
+    public void remove(Player player) {
+        lastNotified.remove(player.getUniqueId());
+        queued.remove(player.getUniqueId());
+    }
+
+    private void tick() {
+        ticks++;
+        effects.clear();
+
+        // Skipped notifications count towards the budget too
+        int processed = 0;
+        UUID uuid;
+        while (processed < perTick && (uuid = queue.poll()) != null) {
+            Notification notification = queued.remove(uuid);
+            if (notification == null) {
+                continue;
+            }
+            processed++;
+
+            Player mentioned = notification.mentioned();
+            if (!mentioned.isOnline()) {
+                continue;
+            }
+
+            Long last = lastNotified.get(mentioned.getUniqueId());
+            if (last != null && ticks - last < cooldown) {
+                continue;
+            }
+            lastNotified.put(mentioned.getUniqueId(), ticks);
+
+            // Every player mentioned by the same sender this tick shares one render
+            Player sender = notification.sender();
+            MentionManager.Effects senderEffects = effects.computeIfAbsent(sender.getUniqueId(),
+                key -> mentionManager.renderEffects(sender));
+            mentionManager.notifyMention(sender, mentioned, notification.mention(), senderEffects);
+        }
+    }
+}
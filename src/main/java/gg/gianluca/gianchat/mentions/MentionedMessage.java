@@ -0,0 +1,230 @@
+package gg.gianluca.gianchat.mentions;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * A chat message with every mention located, built by a single walk over its
+ * component tree. Text containing names is split into plain parts and mention
+ * slots, so a personalized copy is built without serializing or parsing the
+ * message again. A copy only rebuilds the branches that hold a slot for its
+ * viewer and shares every other component with the original message. Players
+ * only mentioned through groups see the same copy as everyone matching the same
+ * group slots, so a group mention is rendered once instead of once per member.
+ */
+public final class MentionedMessage {
+    private final Component message;
+    private final Node root;
+    private final Set<UUID> mentioned;
+    private final List<Slot> slots;
+
+    private MentionedMessage(Component message, Node root, Set<UUID> mentioned, List<Slot> slots) {
+        this.message = message;
+        this.root = root;
+        this.mentioned = mentioned;
+        this.slots = slots;
+    }
+
+    /**
+     * Finds every mention in a message.
+     *
+     * @param finder Finds the mentions in a piece of text
+     * @param sender The player who sent the message, they can't mention themselves
+     * @return The located mentions, or null if nobody was mentioned
+     */
+    public static MentionedMessage scan(Component message, Function<String, List<MentionMatch>> finder, UUID sender) {
+        Set<UUID> mentioned = new HashSet<>();
+        List<Slot> slots = new ArrayList<>();
+        Node root = scan(message, finder, sender, mentioned, slots);
+        return root != null ? new MentionedMessage(message, root, Set.copyOf(mentioned), slots) : null;
+    }
+
+    private static Node scan(Component component, Function<String, List<MentionMatch>> finder, UUID sender,
+                             Set<UUID> mentioned, List<Slot> slots) {
+        List<Object> parts = null;
+        Set<UUID> viewers = null;
+        if (component instanceof TextComponent text && !text.content().isEmpty()) {
+            List<MentionMatch> matches = finder.apply(text.content());
+            if (!matches.isEmpty()) {
+                viewers = new HashSet<>();
+                parts = split(text.content(), matches, sender, viewers, slots);
+            }
+        }
+
+        List<Component> children = component.children();
+        Node[] childNodes = null;
+        for (int i = 0; i < children.size(); i++) {
+            Node child = scan(children.get(i), finder, sender, mentioned, slots);
+            if (child != null) {
+                if (childNodes == null) {
+                    childNodes = new Node[children.size()];
+                }
+                childNodes[i] = child;
+            }
+        }
+
+        if (parts == null && childNodes == null) {
+            return null;
+        }
+
+        Set<UUID> subtreeViewers = viewers != null ? new HashSet<>(viewers) : new HashSet<>();
+        if (childNodes != null) {
+            for (Node child : childNodes) {
+                if (child != null) {
+                    subtreeViewers.addAll(child.viewers());
+                }
+            }
+        }
+        mentioned.addAll(subtreeViewers);
+        return new Node(component, parts, viewers != null ? viewers : Set.of(), childNodes, subtreeViewers);
+    }
+
+    /**
+     * Splits text into strings and mention slots. Overlapping names keep the one
+     * that starts first, then the longest one.
+     */
+    private static List<Object> split(String text, List<MentionMatch> matches, UUID sender, Set<UUID> viewers,
+                                      List<Slot> slots) {
+        List<MentionMatch> sorted = new ArrayList<>(matches);
+        sorted.sort(Comparator.comparingInt(MentionMatch::start)
+            .thenComparing(Comparator.comparingInt(MentionMatch::end).reversed()));
+
+        List<Object> parts = new ArrayList<>();
+        List<Slot> found = new ArrayList<>();
+        int last = 0;
+        for (MentionMatch match : sorted) {
+            if (match.start() < last) {
+                continue;
+            }
+
+            // Group members are already a set, matching a viewer must not scan every online player
+            Set<UUID> players = match.players() instanceof Set<UUID> set ? set : new HashSet<>(match.players());
+            if (players.size() <= (players.contains(sender) ? 1 : 0)) {
+                continue;
+            }
+
+            if (match.start() > last) {
+                parts.add(text.substring(last, match.start()));
+            }
+            Slot slot = new Slot(text.substring(match.start(), match.end()), players, match.mention());
+            parts.add(slot);
+            found.add(slot);
+            viewers.addAll(players);
+            viewers.remove(sender);
+            last = match.end();
+        }
+
+        if (viewers.isEmpty()) {
+            return null;
+        }
+        slots.addAll(found);
+        if (last < text.length()) {
+            parts.add(text.substring(last));
+        }
+        return parts;
+    }
+
+    public Set<UUID> getMentioned() {
+        return mentioned;
+    }
+
+    public Component getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns the group slots a mentioned player matches, or null if their name is
+     * mentioned as well and they need a copy of their own. Players matching the same
+     * group slots see the same copy.
+     */
+    public BitSet getGroupSlots(UUID viewer) {
+        BitSet matched = new BitSet(slots.size());
+        for (int i = 0; i < slots.size(); i++) {
+            Slot slot = slots.get(i);
+            if (slot.players().contains(viewer)) {
+                if (slot.mention() == null) {
+                    return null;
+                }
+                matched.set(i);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Returns the component shown in place of a group slot from {@link #getGroupSlots(UUID)}.
+     */
+    public Component getSlotMention(int slot) {
+        return slots.get(slot).mention();
+    }
+
+    /**
+     * Builds the copy of the message a mentioned player sees.
+     *
+     * @param viewer The mentioned player
+     * @param mention The component replacing every occurrence of the viewer's names,
+     *                groups the viewer belongs to keep their own component. Unused
+     *                for players only mentioned through groups
+     */
+    public Component render(UUID viewer, Component mention) {
+        return root.viewers().contains(viewer) ? render(root, viewer, mention) : message;
+    }
+
+    private static Component render(Node node, UUID viewer, Component mention) {
+        List<Component> children = node.component().children();
+        List<Component> rendered = children;
+        if (node.children() != null) {
+            rendered = new ArrayList<>(children);
+            for (int i = 0; i < children.size(); i++) {
+                Node child = node.children()[i];
+                if (child != null && child.viewers().contains(viewer)) {
+                    rendered.set(i, render(child, viewer, mention));
+                }
+            }
+        }
+
+        if (node.parts() == null || !node.ownViewers().contains(viewer)) {
+            return rendered == children ? node.component() : node.component().children(rendered);
+        }
+
+        // The text moves into children, which inherit the style of the original text
+        List<Component> pieces = new ArrayList<>(node.parts().size() + rendered.size());
+        for (Object part : node.parts()) {
+            if (part instanceof Slot slot) {
+                if (!slot.players().contains(viewer)) {
+                    pieces.add(Component.text(slot.text()));
+                } else {
+                    pieces.add(slot.mention() != null ? slot.mention() : mention);
+                }
+            } else {
+                pieces.add(Component.text((String) part));
+            }
+        }
+        pieces.addAll(rendered);
+        return ((TextComponent) node.component()).content("").children(pieces);
+    }
+
+    private record Slot(String text, Set<UUID> players, Component mention) {
+    }
+
+    /**
+     * A component containing mentions itself or in its children.
+     *
+     * @param parts The component's own text split into strings and slots, or null if it has no mentions
+     * @param ownViewers Players mentioned in the component's own text
+     * @param children Nodes of the children containing mentions, null entries have none
+     * @param viewers Players mentioned anywhere in this subtree
+     */
+    private record Node(Component component, List<Object> parts, Set<UUID> ownViewers, Node[] children,
+                        Set<UUID> viewers) {
+    }
+}
@@ -0,0 +1,181 @@
+package gg.gianluca.gianchat.mentions;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * An immutable Aho-Corasick automaton over case folded player names.
+ * {@link #find(String)} reports every name in a message in a single pass,
+ * no matter how many names the automaton holds.
+ */
+public final class NameAutomaton {
+    public static final NameAutomaton EMPTY = new NameAutomaton(Map.of());
+
+    private final char[][] keys;
+    private final int[][] targets;
+    private final int[] failure;
+    private final int[] outputLink;
+    private final int[] depth;
+    private final List<List<UUID>> players;
+
+    /**
+     * @param names Case folded names mapped to the players using them, see {@link #fold(char)}
+     */
+    public NameAutomaton(Map<String, List<UUID>> names) {
+        // Build the trie
+        List<TreeMap<Character, Integer>> edges = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        List<List<UUID>> outputs = new ArrayList<>();
+        edges.add(new TreeMap<>());
+        depths.add(0);
+        outputs.add(null);
+        for (Map.Entry<String, List<UUID>> entry : names.entrySet()) {
+            String name = entry.getKey();
+            if (name.isEmpty()) {
+                continue;
+            }
+
+            int node = 0;
+            for (int i = 0; i < name.length(); i++) {
+                Integer next = edges.get(node).get(name.charAt(i));
+                if (next == null) {
+                    next = edges.size();
+                    edges.get(node).put(name.charAt(i), next);
+                    edges.add(new TreeMap<>());
+                    depths.add(i + 1);
+                    outputs.add(null);
+                }
+                node = next;
+            }
+            outputs.set(node, List.copyOf(entry.getValue()));
+        }
+
+        int size = edges.size();
+        this.keys = new char[size][];
+        this.targets = new int[size][];
+        this.failure = new int[size];
+        this.outputLink = new int[size];
+        this.depth = new int[size];
+        this.players = outputs;
+        for (int node = 0; node < size; node++) {
+            TreeMap<Character, Integer> nodeEdges = edges.get(node);
+            keys[node] = new char[nodeEdges.size()];
+            targets[node] = new int[nodeEdges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : nodeEdges.entrySet()) {
+                keys[node][i] = edge.getKey();
+                targets[node][i] = edge.getValue();
+                i++;
+            }
+            depth[node] = depths.get(node);
+        }
+
+        // Breadth first, so failure links always point to nodes that are already linked
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < keys[node].length; i++) {
+                int child = targets[node][i];
+                int fallback = failure[node];
+                while (fallback != 0 && next(fallback, keys[node][i]) < 0) {
+                    fallback = failure[fallback];
+                }
+                int link = next(fallback, keys[node][i]);
+                failure[child] = link >= 0 && link != child ? link : 0;
+                outputLink[child] = players.get(failure[child]) != null ? failure[child] : outputLink[failure[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Finds every name in a text that isn't part of a longer word.
+     *
+     * @return The matches ordered by where they end
+     */
+    public List<MentionMatch> find(String text) {
+        List<MentionMatch> matches = null;
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+            int next = next(state, c);
+            while (next < 0 && state != 0) {
+                state = failure[state];
+                next = next(state, c);
+            }
+            state = Math.max(next, 0);
+
+            int output = players.get(state) != null ? state : outputLink[state];
+            while (output != 0) {
+                int start = i + 1 - depth[output];
+                if (isBoundary(text, start - 1) && isBoundary(text, i + 1)) {
+                    if (matches == null) {
+                        matches = new ArrayList<>(4);
+                    }
+                    matches.add(new MentionMatch(start, i + 1, players.get(output)));
+                }
+                output = outputLink[output];
+            }
+        }
+        return matches != null ? matches : List.of();
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    private int next(int node, char c) {
+        int index = Arrays.binarySearch(keys[node], c);
+        return index >= 0 ? targets[node][index] : -1;
+    }
+
+    private static boolean isBoundary(String text, int index) {
+        if (index < 0 || index >= text.length()) {
+            return true;
+        }
+        char c = text.charAt(index);
+        return !Character.isLetterOrDigit(c) && c != '_';
+    }
+
+    /**
+     * Folds a character so matching ignores case. Works per character, so
+     * indices in a folded name line up with the original text.
+     */
+    public static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    public static String fold(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Groups players by their folded names, ready to build an automaton from.
+     */
+    static Map<String, List<UUID>> group(Map<UUID, List<String>> namesByPlayer) {
+        Map<String, List<UUID>> names = new HashMap<>();
+        for (Map.Entry<UUID, List<String>> entry : namesByPlayer.entrySet()) {
+            for (String name : entry.getValue()) {
+                List<UUID> players = names.computeIfAbsent(name, key -> new ArrayList<>(1));
+                if (!players.contains(entry.getKey())) {
+                    players.add(entry.getKey());
+                }
+            }
+        }
+        return names;
+    }
+}
@@ -1,7 +1,6 @@
 package gg.gianluca.gianchat.messages;
 
 import gg.gianluca.gianchat.GianChat;
-import me.clip.placeholderapi.PlaceholderAPI;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
@@ -71,11 +70,11 @@ public class MessageManager {
         
         // Process PlaceholderAPI placeholders
         if (player != null) {
-            message = PlaceholderAPI.setPlaceholders(player, message);
+            message = plugin.getPlaceholderCache().setPlaceholders(player, message);
         } else if (placeholders != null && placeholders.containsKey("player")) {
             Player targetPlayer = Bukkit.getPlayer(placeholders.get("player"));
             if (targetPlayer != null) {
-                message = PlaceholderAPI.setPlaceholders(targetPlayer, message);
+                message = plugin.getPlaceholderCache().setPlaceholders(targetPlayer, message);
             }
         }
         
@@ -0,0 +1,85 @@
+package gg.gianluca.gianchat.messaging;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Who online players ignore, in both directions. The reverse direction lets chat
+ * drop the players ignoring a sender without checking every viewer. Written on
+ * the main thread when players join, quit or change who they ignore, safe to
+ * read from the async chat thread.
+ */
+public class IgnoreIndex {
+    private final Map<UUID, Set<UUID>> ignoring;
+    private final Map<UUID, Set<UUID>> ignoredBy;
+
+    public IgnoreIndex() {
+        this.ignoring = new ConcurrentHashMap<>();
+        this.ignoredBy = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Adds a player who joined with the players they ignore.
+     */
+    public void load(UUID player, Collection<UUID> ignored) {
+        unload(player);
+        for (UUID target : ignored) {
+            set(player, target, true);
+        }
+    }
+
+    /**
+     * Removes a player who quit. Players ignoring them keep their entries.
+     */
+    public void unload(UUID player) {
+        Set<UUID> ignored = ignoring.remove(player);
+        if (ignored == null) {
+            return;
+        }
+        for (UUID target : ignored) {
+            removeIgnorer(target, player);
+        }
+    }
+
+    public void set(UUID player, UUID target, boolean ignored) {
+        if (ignored) {
+            ignoring.computeIfAbsent(player, k -> ConcurrentHashMap.newKeySet()).add(target);
+            ignoredBy.computeIfAbsent(target, k -> ConcurrentHashMap.newKeySet()).add(player);
+            return;
+        }
+
+        Set<UUID> targets = ignoring.get(player);
+        if (targets != null) {
+            targets.remove(target);
+            if (targets.isEmpty()) {
+                ignoring.remove(player, targets);
+            }
+        }
+        removeIgnorer(target, player);
+    }
+
+    private void removeIgnorer(UUID target, UUID player) {
+        Set<UUID> ignorers = ignoredBy.get(target);
+        if (ignorers != null) {
+            ignorers.remove(player);
+            if (ignorers.isEmpty()) {
+                ignoredBy.remove(target, ignorers);
+            }
+        }
+    }
+
+    public boolean isIgnoring(UUID player, UUID target) {
+        Set<UUID> targets = ignoring.get(player);
+        return targets != null && targets.contains(target);
+    }
+
+    /**
+     * Returns the online players ignoring a player. The set is live, don't modify it.
+     */
+    public Set<UUID> getIgnorers(UUID target) {
+        return ignoredBy.getOrDefault(target, Set.of());
+    }
+}
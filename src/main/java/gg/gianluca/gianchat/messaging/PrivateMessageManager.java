@@ -5,10 +5,15 @@ import gg.gianluca.gianchat.data.PlayerData;
 import gg.gianluca.gianchat.events.GianChatPrivateMessageEvent;
 import gg.gianluca.gianchat.events.GianChatPrivateMessageToggleEvent;
 import gg.gianluca.gianchat.events.GianChatPlayerIgnoreEvent;
-import me.clip.placeholderapi.PlaceholderAPI;
+import gg.gianluca.gianchat.format.ComponentTemplate;
+import gg.gianluca.gianchat.messaging.history.ConversationStore;
+import gg.gianluca.gianchat.messaging.mail.MailManager;
+import gg.gianluca.gianchat.stats.Stage;
+import gg.gianluca.gianchat.stats.StatisticsManager;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.Sound;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
@@ -17,31 +22,37 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class PrivateMessageManager {
     private final GianChat plugin;
     private final Map<UUID, UUID> lastMessagedPlayer;
-    private final Set<UUID> socialSpyEnabled;
+    private final SocialSpyRegistry socialSpy;
+    private final ConversationStore history;
+    private final MailManager mail;
     private final Set<UUID> messagesEnabled;
-    private final Map<UUID, Set<UUID>> ignoredPlayers; // Key: Player UUID, Value: Set of ignored player UUIDs
+    private final IgnoreIndex ignoreIndex;
     private YamlConfiguration config;
+    private volatile Templates templates;
     private boolean enabled;
     private boolean replyToLastSent;
     private boolean soundEnabled;
     private Sound notificationSound;
     private float soundVolume;
     private float soundPitch;
-    private int autoSaveTaskId;
-
     public PrivateMessageManager(GianChat plugin) {
         this.plugin = plugin;
         this.lastMessagedPlayer = new HashMap<>();
-        this.socialSpyEnabled = new HashSet<>();
+        this.ignoreIndex = new IgnoreIndex();
+        this.socialSpy = new SocialSpyRegistry(plugin, ignoreIndex);
+        this.history = new ConversationStore(plugin);
+        this.mail = new MailManager(plugin);
         this.messagesEnabled = new HashSet<>();
-        this.ignoredPlayers = new HashMap<>();
         loadConfig();
         loadData();
-        startAutoSave();
+        history.start();
+        mail.start();
     }
 
     @SuppressWarnings("deprecation")
@@ -70,12 +81,63 @@ public class PrivateMessageManager {
         }
         soundVolume = (float) config.getDouble("sound.volume", 1.0);
         soundPitch = (float) config.getDouble("sound.pitch", 1.0);
+        socialSpy.loadConfig(config.getConfigurationSection("social-spy"));
+        history.loadConfig(config.getConfigurationSection("history"));
+        mail.loadConfig(config.getConfigurationSection("offline-mail"));
+
+        // Formats are compiled once, sending a message only fills in placeholders
+        templates = new Templates(
+            PrivateMessageTemplate.compile(config.getConfigurationSection("sender-format"),
+                "<gray>You -> %recipient_display_name%: %message%", "/msg %recipient% ", plugin.getLogger()),
+            PrivateMessageTemplate.compile(config.getConfigurationSection("receiver-format"),
+                "<gray>%sender_display_name% -> You: %message%", "/r ", plugin.getLogger()),
+            PrivateMessageTemplate.compile(config.getConfigurationSection("social-spy"),
+                "<gray>[SPY] %sender_display_name% -> %recipient_display_name%: %message%", "", plugin.getLogger())
+        );
+    }
+
+    private record Templates(PrivateMessageTemplate sender, PrivateMessageTemplate receiver,
+                             PrivateMessageTemplate socialSpy) {
     }
 
     public boolean isEnabled() {
         return enabled;
     }
 
+    /**
+     * Resolves a placeholder of a private message. {@code %sender_...%} and {@code %recipient_...%}
+     * are resolved for that player, {@code %sender%} and {@code %recipient%} are their names,
+     * anything else is resolved for the player the line is written for.
+     */
+    private String resolvePlaceholder(Player self, Player sender, Player recipient,
+                                      Map<String, String> senderValues, Map<String, String> recipientValues,
+                                      String placeholder) {
+        switch (placeholder) {
+            case "sender":
+                return sender.getName();
+            case "recipient":
+                return recipient.getName();
+        }
+
+        Player target = self;
+        String key = placeholder;
+        if (placeholder.startsWith("sender_")) {
+            target = sender;
+            key = placeholder.substring(7);
+        } else if (placeholder.startsWith("recipient_")) {
+            target = recipient;
+            key = placeholder.substring(10);
+        }
+
+        Player player = target;
+        Map<String, String> values = player == sender ? senderValues : recipientValues;
+        return values.computeIfAbsent(key, k -> plugin.getPlaceholderCache().resolve(player, k));
+    }
+
+    private static Function<String, Component> components(Function<String, String> values, Component body) {
+        return placeholder -> placeholder.equals("message") ? body : ComponentTemplate.valueComponent(values.apply(placeholder));
+    }
+
     public boolean sendPrivateMessage(Player sender, Player recipient, String message) {
         if (!hasMessagesEnabled(sender)) {
             sender.sendMessage(plugin.getMessageManager().getMessage("error.messages_disabled_self"));
@@ -97,88 +159,37 @@ public class PrivateMessageManager {
             return false;
         }
 
-        // Get format configurations
-        String senderFormatStr = config.getString("sender-format.format", "<gray>You -> %recipient_display_name%: %message%");
-        String recipientFormatStr = config.getString("receiver-format.format", "<gray>%sender_display_name% -> You: %message%");
-        String spyFormatStr = config.getString("social-spy.format", "<gray>[SPY] %sender_display_name% -> %recipient_display_name%: %message%");
-        List<String> senderTooltip = config.getStringList("sender-format.tooltip");
-        List<String> recipientTooltip = config.getStringList("receiver-format.tooltip");
-
-        // Process message with PlaceholderAPI for both sender and recipient contexts
-        String processedMessageSender = PlaceholderAPI.setPlaceholders(sender, message);
-        String processedMessageRecipient = PlaceholderAPI.setPlaceholders(recipient, message);
-
-        // Process tooltips with PlaceholderAPI
-        List<Component> senderTooltipComponents = new ArrayList<>();
-        List<Component> recipientTooltipComponents = new ArrayList<>();
-
-        // Process sender tooltip
-        for (String line : senderTooltip) {
-            String processed = PlaceholderAPI.setPlaceholders(sender, line);
-            processed = PlaceholderAPI.setPlaceholders(recipient, processed.replace("%recipient_", "%"));
-            senderTooltipComponents.add(MiniMessage.miniMessage().deserialize(processed));
-        }
-
-        // Process recipient tooltip
-        for (String line : recipientTooltip) {
-            String processed = PlaceholderAPI.setPlaceholders(recipient, line);
-            processed = PlaceholderAPI.setPlaceholders(sender, processed.replace("%sender_", "%"));
-            recipientTooltipComponents.add(MiniMessage.miniMessage().deserialize(processed));
-        }
-
-        // Process format strings with PlaceholderAPI
-        senderFormatStr = PlaceholderAPI.setPlaceholders(sender, senderFormatStr);
-        senderFormatStr = PlaceholderAPI.setPlaceholders(recipient, senderFormatStr.replace("%recipient_", "%"));
-        
-        recipientFormatStr = PlaceholderAPI.setPlaceholders(recipient, recipientFormatStr);
-        recipientFormatStr = PlaceholderAPI.setPlaceholders(sender, recipientFormatStr.replace("%sender_", "%"));
-        
-        spyFormatStr = PlaceholderAPI.setPlaceholders(sender, spyFormatStr);
-        spyFormatStr = PlaceholderAPI.setPlaceholders(recipient, spyFormatStr.replace("%recipient_", "%"));
-
-        // Create the final components with proper message replacement
-        Component senderMessage = MiniMessage.miniMessage().deserialize(
-            senderFormatStr.replace("%message%", MiniMessage.miniMessage().serialize(
-                MiniMessage.miniMessage().deserialize(processedMessageSender)
-            ))
-        ).hoverEvent(Component.join(net.kyori.adventure.text.JoinConfiguration.newlines(), senderTooltipComponents));
-
-        Component recipientMessage = MiniMessage.miniMessage().deserialize(
-            recipientFormatStr.replace("%message%", MiniMessage.miniMessage().serialize(
-                MiniMessage.miniMessage().deserialize(processedMessageRecipient)
-            ))
-        ).hoverEvent(Component.join(net.kyori.adventure.text.JoinConfiguration.newlines(), recipientTooltipComponents));
-
-        Component spyMessage = MiniMessage.miniMessage().deserialize(
-            spyFormatStr.replace("%message%", MiniMessage.miniMessage().serialize(
-                MiniMessage.miniMessage().deserialize(processedMessageSender)
-            ))
-        );
-
-        // Add click events if configured
-        if (config.contains("sender-format.click_event")) {
-            String type = config.getString("sender-format.click_event.type", "SUGGEST_COMMAND");
-            String command = config.getString("sender-format.click_event.command", "/msg %recipient% ");
-            command = PlaceholderAPI.setPlaceholders(recipient, command.replace("%recipient%", "%player_name%"));
-            senderMessage = senderMessage.clickEvent(net.kyori.adventure.text.event.ClickEvent.clickEvent(
-                net.kyori.adventure.text.event.ClickEvent.Action.valueOf(type),
-                command
-            ));
-        }
-
-        if (config.contains("receiver-format.click_event")) {
-            String type = config.getString("receiver-format.click_event.type", "SUGGEST_COMMAND");
-            String command = config.getString("receiver-format.click_event.command", "/r ");
-            command = PlaceholderAPI.setPlaceholders(sender, command.replace("%sender%", "%player_name%"));
-            recipientMessage = recipientMessage.clickEvent(net.kyori.adventure.text.event.ClickEvent.clickEvent(
-                net.kyori.adventure.text.event.ClickEvent.Action.valueOf(type),
-                command
-            ));
-        }
+        StatisticsManager statistics = plugin.getStatistics();
+        long started = statistics.start();
+
+        // The message is parsed once for each player it's resolved for
+        String senderBody = plugin.getPlaceholderCache().setPlaceholders(sender, message);
+        String recipientBody = plugin.getPlaceholderCache().setPlaceholders(recipient, message);
+        Component senderBodyComponent = MiniMessage.miniMessage().deserialize(senderBody);
+        Component recipientBodyComponent = senderBody.equals(recipientBody)
+            ? senderBodyComponent : MiniMessage.miniMessage().deserialize(recipientBody);
+
+        Map<String, String> senderValues = new HashMap<>();
+        Map<String, String> recipientValues = new HashMap<>();
+        Function<String, String> senderView = placeholder ->
+            resolvePlaceholder(sender, sender, recipient, senderValues, recipientValues, placeholder);
+        Function<String, String> recipientView = placeholder ->
+            resolvePlaceholder(recipient, sender, recipient, senderValues, recipientValues, placeholder);
+
+        Templates current = templates;
+        Component senderMessage = current.sender().render(
+            components(senderView, senderBodyComponent), senderView);
+        Component recipientMessage = current.receiver().render(
+            components(recipientView, recipientBodyComponent), recipientView);
+        Component spyMessage = current.socialSpy().render(
+            components(senderView, senderBodyComponent), senderView);
+
+        long time = statistics.record(Stage.PRIVATE_MESSAGE_RENDER, started);
 
         // Create and call the event
         GianChatPrivateMessageEvent event = new GianChatPrivateMessageEvent(sender, recipient, senderMessage, recipientMessage, spyMessage, soundEnabled);
         Bukkit.getPluginManager().callEvent(event);
+        time = statistics.record(Stage.PRIVATE_MESSAGE_EVENT, time);
 
         if (event.isCancelled()) {
             return false;
@@ -198,12 +209,52 @@ public class PrivateMessageManager {
         }
 
         // Notify social spies
-        for (Player player : Bukkit.getOnlinePlayers()) {
-            if (hasSocialSpyEnabled(player) && !player.equals(sender) && !player.equals(recipient)) {
-                player.sendMessage(event.getSocialSpyMessage());
-            }
+        socialSpy.deliverPrivateMessage(sender, recipient, event.getSocialSpyMessage());
+        history.record(sender, recipient, message);
+
+        statistics.record(Stage.PRIVATE_MESSAGE_DELIVERY, time);
+        statistics.record(Stage.PRIVATE_MESSAGE_TOTAL, started);
+        statistics.countPrivateMessage();
+        return true;
+    }
+
+    /**
+     * Leaves a message for an offline player, delivered when they join.
+     */
+    public boolean sendOfflineMessage(Player sender, OfflinePlayer recipient, String message) {
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("player", recipient.getName() != null ? recipient.getName() : recipient.getUniqueId().toString());
+
+        if (!mail.isEnabled() || !sender.hasPermission("gianchat.mail.send")) {
+            sender.sendMessage(plugin.getMessageManager().getMessage("error.player_not_found", placeholders));
+            return false;
         }
 
+        if (!hasMessagesEnabled(sender)) {
+            sender.sendMessage(plugin.getMessageManager().getMessage("error.messages_disabled_self"));
+            return false;
+        }
+
+        PlayerData recipientData = plugin.getDataManager().getStoredPlayerData(recipient.getUniqueId());
+        if (recipientData != null && !recipientData.isMessagesEnabled()) {
+            sender.sendMessage(plugin.getMessageManager().getMessage("error.messages_disabled_other", placeholders));
+            return false;
+        }
+
+        boolean ignoring = getIgnoredPlayers(sender).contains(recipient.getUniqueId());
+        if (ignoring || recipientData != null && recipientData.getIgnoredPlayers().contains(sender.getUniqueId())) {
+            sender.sendMessage(plugin.getMessageManager().getMessage(
+                ignoring ? "error.ignoring_player" : "error.player_ignored", placeholders));
+            return false;
+        }
+
+        if (!mail.send(sender, recipient.getUniqueId(), message)) {
+            placeholders.put("max", String.valueOf(mail.getMaxPerSender()));
+            sender.sendMessage(plugin.getMessageManager().getMessage("mail.quota_reached", placeholders));
+            return false;
+        }
+
+        sender.sendMessage(plugin.getMessageManager().getMessage("mail.sent", placeholders));
         return true;
     }
 
@@ -214,22 +265,38 @@ public class PrivateMessageManager {
     }
 
     public boolean toggleSocialSpy(Player player) {
-        boolean newState = !hasSocialSpyEnabled(player);
-        plugin.getDataManager().getPlayerData(player).setSocialSpyEnabled(newState);
+        PlayerData data = plugin.getDataManager().getPlayerData(player);
+        boolean newState = !data.isSocialSpyEnabled();
+        data.setSocialSpyEnabled(newState);
         plugin.getDataManager().savePlayerData(player);
-        
-        if (newState) {
-            socialSpyEnabled.add(player.getUniqueId());
-        } else {
-            socialSpyEnabled.remove(player.getUniqueId());
-        }
-        
+        socialSpy.update(player, data);
         return newState;
     }
 
+    /**
+     * Applies a change to a player's social spy filters.
+     */
+    public void updateSocialSpyFilters(Player player, Consumer<PlayerData> change) {
+        PlayerData data = plugin.getDataManager().getPlayerData(player);
+        change.accept(data);
+        plugin.getDataManager().savePlayerData(player);
+        socialSpy.update(player, data);
+    }
+
     public boolean hasSocialSpyEnabled(Player player) {
-        return socialSpyEnabled.contains(player.getUniqueId()) || 
-               plugin.getDataManager().getPlayerData(player).isSocialSpyEnabled();
+        return socialSpy.isSpying(player);
+    }
+
+    public SocialSpyRegistry getSocialSpy() {
+        return socialSpy;
+    }
+
+    public ConversationStore getHistory() {
+        return history;
+    }
+
+    public MailManager getMail() {
+        return mail;
     }
 
     public void toggleMessages(Player player) {
@@ -271,7 +338,11 @@ public class PrivateMessageManager {
     }
 
     public boolean hasPlayerIgnored(Player player, Player target) {
-        return getIgnoredPlayers(player).contains(target.getUniqueId());
+        return ignoreIndex.isIgnoring(player.getUniqueId(), target.getUniqueId());
+    }
+
+    public IgnoreIndex getIgnoreIndex() {
+        return ignoreIndex;
     }
 
     public void toggleIgnorePlayer(Player player, Player target) {
@@ -283,6 +354,8 @@ public class PrivateMessageManager {
         } else {
             ignoredPlayers.add(targetUUID);
         }
+        ignoreIndex.set(player.getUniqueId(), targetUUID, ignoredPlayers.contains(targetUUID));
+        plugin.getDataManager().savePlayerData(player);
     }
 
     public void setPlayerIgnored(Player player, Player target, boolean ignored) {
@@ -303,26 +376,15 @@ public class PrivateMessageManager {
         } else {
             ignoredPlayers.remove(targetUUID);
         }
+        ignoreIndex.set(player.getUniqueId(), targetUUID, ignored);
         
         // Save the data
         plugin.getDataManager().savePlayerData(player);
     }
 
-    private void startAutoSave() {
-        int interval = plugin.getConfig().getInt("auto-save-interval", 5) * 20 * 60; // Convert minutes to ticks
-        autoSaveTaskId = plugin.getServer().getScheduler().scheduleSyncRepeatingTask(plugin, () -> {
-            for (Player player : Bukkit.getOnlinePlayers()) {
-                plugin.getDataManager().savePlayerData(player);
-            }
-        }, interval, interval);
-    }
-
     public void cleanup() {
-        plugin.getServer().getScheduler().cancelTask(autoSaveTaskId);
-        // Ensure any pending changes are saved through DataManager
-        for (Player player : Bukkit.getOnlinePlayers()) {
-            plugin.getDataManager().savePlayerData(player);
-        }
+        history.stop();
+        mail.stop();
     }
 
     private void loadData() {
@@ -331,9 +393,7 @@ public class PrivateMessageManager {
             PlayerData data = plugin.getDataManager().getPlayerData(player);
             
             // Load social spy status
-            if (data.isSocialSpyEnabled()) {
-                socialSpyEnabled.add(player.getUniqueId());
-            }
+            socialSpy.update(player, data);
             
             // Load messages enabled status
             if (data.isMessagesEnabled()) {
@@ -341,10 +401,7 @@ public class PrivateMessageManager {
             }
             
             // Load ignored players
-            Set<UUID> ignored = data.getIgnoredPlayers();
-            if (!ignored.isEmpty()) {
-                ignoredPlayers.put(player.getUniqueId(), new HashSet<>(ignored));
-            }
+            ignoreIndex.load(player.getUniqueId(), data.getIgnoredPlayers());
             
             // Load last messager
             UUID lastMessager = data.getLastMessager();
@@ -358,9 +415,7 @@ public class PrivateMessageManager {
         PlayerData data = plugin.getDataManager().getPlayerData(player);
         
         // Load social spy status
-        if (data.isSocialSpyEnabled()) {
-            socialSpyEnabled.add(player.getUniqueId());
-        }
+        socialSpy.update(player, data);
         
         // Load messages enabled status
         if (data.isMessagesEnabled()) {
@@ -368,10 +423,7 @@ public class PrivateMessageManager {
         }
         
         // Load ignored players
-        Set<UUID> ignored = data.getIgnoredPlayers();
-        if (!ignored.isEmpty()) {
-            ignoredPlayers.put(player.getUniqueId(), new HashSet<>(ignored));
-        }
+        ignoreIndex.load(player.getUniqueId(), data.getIgnoredPlayers());
         
         // Load last messager
         UUID lastMessager = data.getLastMessager();
@@ -382,9 +434,9 @@ public class PrivateMessageManager {
 
     public void removePlayerData(Player player) {
         UUID uuid = player.getUniqueId();
-        socialSpyEnabled.remove(uuid);
+        socialSpy.remove(player);
         messagesEnabled.remove(uuid);
-        ignoredPlayers.remove(uuid);
+        ignoreIndex.unload(uuid);
         lastMessagedPlayer.remove(uuid);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,104 @@
+package gg.gianluca.gianchat.messaging;
+
+import gg.gianluca.gianchat.format.ComponentTemplate;
+import gg.gianluca.gianchat.format.TextTemplate;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.JoinConfiguration;
+import net.kyori.adventure.text.event.ClickEvent;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * A line of {@code privatemessages.yml} compiled once when the config is loaded,
+ * with its tooltip and click event. Sending a message only fills in placeholders.
+ */
+public final class PrivateMessageTemplate {
+    private final ComponentTemplate format;
+    private final List<ComponentTemplate> tooltip;
+    private final Component staticTooltip;
+    private final ClickEvent.Action clickAction;
+    private final TextTemplate clickCommand;
+
+    private PrivateMessageTemplate(ComponentTemplate format, List<ComponentTemplate> tooltip,
+                                   ClickEvent.Action clickAction, TextTemplate clickCommand) {
+        this.format = format;
+        this.tooltip = tooltip;
+        this.clickAction = clickAction;
+        this.clickCommand = clickCommand;
+
+        // Tooltips without placeholders are built once and shared by every message
+        boolean tooltipStatic = tooltip.stream().allMatch(ComponentTemplate::isStatic);
+        this.staticTooltip = tooltipStatic && !tooltip.isEmpty() ? joinTooltip(placeholder -> null) : null;
+    }
+
+    /**
+     * Compiles a section with a format, and optionally a tooltip and a click event.
+     *
+     * @param defaultFormat The format used when the section doesn't set one
+     * @param defaultCommand The click command used when the click event doesn't set one
+     */
+    public static PrivateMessageTemplate compile(ConfigurationSection section, String defaultFormat,
+                                                 String defaultCommand, Logger logger) {
+        if (section == null) {
+            return new PrivateMessageTemplate(ComponentTemplate.compile(defaultFormat), List.of(), null, null);
+        }
+
+        List<ComponentTemplate> tooltip = new ArrayList<>();
+        for (String line : section.getStringList("tooltip")) {
+            tooltip.add(ComponentTemplate.compile(line));
+        }
+
+        ClickEvent.Action clickAction = null;
+        TextTemplate clickCommand = null;
+        ConfigurationSection clickSection = section.getConfigurationSection("click_event");
+        if (clickSection != null) {
+            String type = clickSection.getString("type", "SUGGEST_COMMAND");
+            try {
+                clickAction = ClickEvent.Action.valueOf(type.toUpperCase(Locale.ROOT));
+                clickCommand = TextTemplate.compile(clickSection.getString("command", defaultCommand));
+            } catch (IllegalArgumentException e) {
+                logger.warning("Invalid click event type '" + type + "' in " + section.getCurrentPath()
+                    + " of privatemessages.yml, ignoring it");
+            }
+        }
+
+        return new PrivateMessageTemplate(ComponentTemplate.compile(section.getString("format", defaultFormat)),
+            List.copyOf(tooltip), clickAction, clickCommand);
+    }
+
+    private Component joinTooltip(Function<String, Component> values) {
+        List<Component> lines = new ArrayList<>(tooltip.size());
+        for (ComponentTemplate line : tooltip) {
+            lines.add(line.render(values));
+        }
+        return Component.join(JoinConfiguration.newlines(), lines);
+    }
+
+    /**
+     * Renders the line.
+     *
+     * @param components The value of each placeholder as a component
+     * @param values The value of each placeholder as text, used by the click command
+     */
+    public Component render(Function<String, Component> components, Function<String, String> values) {
+        Component component = format.render(components);
+
+        Component hover = staticTooltip;
+        if (hover == null && !tooltip.isEmpty()) {
+            hover = joinTooltip(components);
+        }
+        if (hover != null) {
+            component = component.hoverEvent(hover);
+        }
+
+        if (clickAction != null) {
+            component = component.clickEvent(ClickEvent.clickEvent(clickAction, clickCommand.render(values)));
+        }
+        return component;
+    }
+}
@@ -0,0 +1,168 @@
+package gg.gianluca.gianchat.messaging;
+
+import gg.gianluca.gianchat.GianChat;
+import gg.gianluca.gianchat.data.PlayerData;
+import gg.gianluca.gianchat.format.ComponentTemplate;
+import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.text.Component;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The online players with social spy enabled and their filters. Kept in sync
+ * when spy is toggled and on join and quit, so delivering a spy message only
+ * looks at active spies. Safe to read from the async chat thread.
+ */
+public class SocialSpyRegistry {
+    private final GianChat plugin;
+    private final IgnoreIndex ignoreIndex;
+    private final Map<UUID, Spy> spies;
+    private volatile boolean enabled;
+    private volatile List<String> keywords;
+    private volatile ComponentTemplate keywordFormat;
+    private volatile String staffPermission;
+
+    /**
+     * A spy and their filters, replaced whenever they change.
+     *
+     * @param watched Only messages from or to these players are shown, every message if empty
+     * @param excludeStaff Whether messages from or to staff members are hidden
+     * @param keywords Whether public chat containing a keyword is shown
+     */
+    private record Spy(Player player, Set<UUID> watched, boolean excludeStaff, boolean keywords) {
+    }
+
+    public SocialSpyRegistry(GianChat plugin, IgnoreIndex ignoreIndex) {
+        this.plugin = plugin;
+        this.ignoreIndex = ignoreIndex;
+        this.spies = new ConcurrentHashMap<>();
+        this.keywords = List.of();
+        this.keywordFormat = ComponentTemplate.EMPTY;
+        this.staffPermission = "gianchat.socialspy.staff";
+    }
+
+    public void loadConfig(ConfigurationSection config) {
+        enabled = config == null || config.getBoolean("enabled", true);
+        if (config == null) {
+            return;
+        }
+
+        List<String> loaded = new ArrayList<>();
+        for (String keyword : config.getStringList("keywords")) {
+            if (!keyword.isBlank()) {
+                loaded.add(keyword.toLowerCase(Locale.ROOT));
+            }
+        }
+        keywords = List.copyOf(loaded);
+        keywordFormat = ComponentTemplate.compile(config.getString("keyword-format",
+            "<gray>[SPY] %player_name%: %message%"));
+        staffPermission = config.getString("staff-permission", "gianchat.socialspy.staff");
+    }
+
+    /**
+     * Adds a spy or refreshes their filters from their data. Must be called on the main thread.
+     */
+    public void update(Player player, PlayerData data) {
+        if (!data.isSocialSpyEnabled()) {
+            spies.remove(player.getUniqueId());
+            return;
+        }
+        spies.put(player.getUniqueId(), new Spy(player, Set.copyOf(data.getSpyWatchedPlayers()),
+            data.isSpyExcludingStaff(), data.isSpyKeywordsEnabled()));
+    }
+
+    public void remove(Player player) {
+        spies.remove(player.getUniqueId());
+    }
+
+    public boolean isSpying(Player player) {
+        return spies.containsKey(player.getUniqueId());
+    }
+
+    /**
+     * Shows a private message to every spy whose filters match it.
+     */
+    public void deliverPrivateMessage(Player sender, Player recipient, Component message) {
+        if (!enabled || spies.isEmpty()) {
+            return;
+        }
+
+        Boolean staff = null;
+        Set<UUID> ignorers = ignoreIndex.getIgnorers(sender.getUniqueId());
+        List<Player> audience = new ArrayList<>();
+        for (Spy spy : spies.values()) {
+            UUID uuid = spy.player().getUniqueId();
+            if (uuid.equals(sender.getUniqueId()) || uuid.equals(recipient.getUniqueId()) || ignorers.contains(uuid)) {
+                continue;
+            }
+            if (!spy.watched().isEmpty() && !spy.watched().contains(sender.getUniqueId())
+                && !spy.watched().contains(recipient.getUniqueId())) {
+                continue;
+            }
+            if (spy.excludeStaff()) {
+                if (staff == null) {
+                    staff = sender.hasPermission(staffPermission) || recipient.hasPermission(staffPermission);
+                }
+                if (staff) {
+                    continue;
+                }
+            }
+            audience.add(spy.player());
+        }
+
+        if (!audience.isEmpty()) {
+            Audience.audience(audience).sendMessage(message);
+        }
+    }
+
+    /**
+     * Shows a public chat message containing a keyword to the spies that asked for it.
+     * Safe to call from the async chat thread.
+     *
+     * @param message The message as typed by the player
+     */
+    public void deliverKeywordHit(Player sender, String message, Component messageComponent) {
+        List<String> current = keywords;
+        if (!enabled || current.isEmpty() || spies.isEmpty()) {
+            return;
+        }
+
+        String lower = message.toLowerCase(Locale.ROOT);
+        boolean hit = false;
+        for (String keyword : current) {
+            if (lower.contains(keyword)) {
+                hit = true;
+                break;
+            }
+        }
+        if (!hit) {
+            return;
+        }
+
+        Set<UUID> ignorers = ignoreIndex.getIgnorers(sender.getUniqueId());
+        List<Player> audience = new ArrayList<>();
+        for (Spy spy : spies.values()) {
+            if (spy.keywords() && !spy.player().getUniqueId().equals(sender.getUniqueId())
+                && !ignorers.contains(spy.player().getUniqueId())
+                && (spy.watched().isEmpty() || spy.watched().contains(sender.getUniqueId()))) {
+                audience.add(spy.player());
+            }
+        }
+
+        if (!audience.isEmpty()) {
+            Audience.audience(audience).sendMessage(keywordFormat.render(placeholder -> switch (placeholder) {
+                case "player_name" -> Component.text(sender.getName());
+                case "message" -> messageComponent;
+                default -> Component.text("%" + placeholder + "%");
+            }));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package gg.gianluca.gianchat.messaging.history;
+
+import java.util.UUID;
+
+/**
+ * The two players of a conversation, in a fixed order so both directions share a key.
+ */
+public record ConversationKey(UUID first, UUID second) {
+
+    public static ConversationKey of(UUID a, UUID b) {
+        return a.compareTo(b) <= 0 ? new ConversationKey(a, b) : new ConversationKey(b, a);
+    }
+
+    public String fileName() {
+        return first + "_" + second;
+    }
+}
@@ -0,0 +1,295 @@
+package gg.gianluca.gianchat.messaging.history;
+
+import gg.gianluca.gianchat.GianChat;
+import gg.gianluca.gianchat.format.ComponentTemplate;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Private message history, per pair of players. The newest messages of recently
+ * active conversations are kept in memory, a bounded number of conversations with
+ * a bounded number of messages each. Everything is appended to a {@link HistoryLog}
+ * on a single history thread, which also reads older pages, so a read always sees
+ * every message written before it. Messages are queued and written in batches, once
+ * too many are waiting new ones are only kept in memory.
+ */
+public class ConversationStore {
+    private static final String DEFAULT_FORMAT = "<dark_gray>[%time%]</dark_gray> <gray>%sender%: <white>%message%";
+    private static final int MAX_QUEUED = 10000;
+
+    private final GianChat plugin;
+    private final File directory;
+    private final Map<ConversationKey, ArrayDeque<HistoryEntry>> recent;
+    private final Queue<QueuedEntry> queue;
+    private final AtomicInteger queued;
+    private final AtomicInteger dropped;
+    private final AtomicBoolean writeScheduled;
+    private volatile boolean enabled;
+    private volatile int cachedMessages;
+    private volatile int cachedConversations;
+    private volatile int pageSize;
+    private volatile ComponentTemplate format;
+    private volatile DateTimeFormatter timeFormat;
+    private long segmentSize;
+    private long retentionDays;
+    private ExecutorService executor;
+    private HistoryLog log;
+
+    public ConversationStore(GianChat plugin) {
+        this.plugin = plugin;
+        this.directory = new File(plugin.getDataFolder(), "history");
+        // Least recently used conversations are dropped from memory first
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ConversationKey, ArrayDeque<HistoryEntry>> eldest) {
+                return size() > cachedConversations;
+            }
+        };
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.queued = new AtomicInteger();
+        this.dropped = new AtomicInteger();
+        this.writeScheduled = new AtomicBoolean();
+        loadConfig(null);
+    }
+
+    public void loadConfig(ConfigurationSection config) {
+        enabled = config == null || config.getBoolean("enabled", true);
+        cachedMessages = Math.max(0, config != null ? config.getInt("cached-messages", 50) : 50);
+        cachedConversations = Math.max(0, config != null ? config.getInt("cached-conversations", 500) : 500);
+        pageSize = Math.max(1, config != null ? config.getInt("page-size", 10) : 10);
+        segmentSize = Math.max(1, config != null ? config.getLong("segment-size", 8) : 8) * 1024 * 1024;
+        retentionDays = config != null ? config.getLong("retention-days", 30) : 30;
+        format = ComponentTemplate.compile(config != null
+            ? config.getString("format", DEFAULT_FORMAT) : DEFAULT_FORMAT);
+        try {
+            timeFormat = DateTimeFormatter.ofPattern(config != null ? config.getString("time-format", "dd/MM HH:mm") : "dd/MM HH:mm")
+                .withZone(ZoneId.systemDefault());
+        } catch (IllegalArgumentException e) {
+            timeFormat = DateTimeFormatter.ofPattern("dd/MM HH:mm").withZone(ZoneId.systemDefault());
+            plugin.getLogger().warning("Invalid history time-format in privatemessages.yml, defaulting to dd/MM HH:mm");
+        }
+
+        // Drop what no longer fits the new limits
+        for (Iterator<ArrayDeque<HistoryEntry>> iterator = recent.values().iterator(); iterator.hasNext(); ) {
+            ArrayDeque<HistoryEntry> messages = iterator.next();
+            while (messages.size() > cachedMessages) {
+                messages.removeFirst();
+            }
+            if (messages.isEmpty() || recent.size() > cachedConversations) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Opens the history files. Segment size and retention only change on restart.
+     */
+    public void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "GianChat History Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        HistoryLog opening = new HistoryLog(directory, segmentSize, retentionDays);
+        executor.execute(() -> {
+            try {
+                directory.mkdirs();
+                opening.open();
+                log = opening;
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to open private message history: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Writes every pending message and closes the history files.
+     */
+    public void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.execute(() -> {
+            writeQueued();
+            try {
+                if (log != null) {
+                    log.close();
+                }
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to close private message history: " + e.getMessage());
+            }
+        });
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Records a private message. Must be called on the main thread.
+     */
+    public void record(Player sender, Player recipient, String message) {
+        if (!enabled || executor == null) {
+            return;
+        }
+
+        ConversationKey key = ConversationKey.of(sender.getUniqueId(), recipient.getUniqueId());
+        HistoryEntry entry = new HistoryEntry(System.currentTimeMillis(), sender.getUniqueId(), sender.getName(), message);
+        if (cachedMessages > 0 && cachedConversations > 0) {
+            ArrayDeque<HistoryEntry> messages = recent.computeIfAbsent(key, k -> new ArrayDeque<>());
+            if (messages.size() >= cachedMessages) {
+                messages.removeFirst();
+            }
+            messages.addLast(entry);
+        }
+
+        // The history thread can't keep up, the message is only kept in memory
+        if (queued.incrementAndGet() > MAX_QUEUED) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.add(new QueuedEntry(key, entry));
+        // A batch that hasn't been written yet picks up this message as well
+        if (writeScheduled.compareAndSet(false, true)) {
+            execute(this::writeQueued);
+        }
+    }
+
+    /**
+     * Writes every queued message, grouped by conversation. Runs on the history thread.
+     */
+    private void writeQueued() {
+        writeScheduled.set(false);
+        Map<ConversationKey, List<HistoryEntry>> batch = new LinkedHashMap<>();
+        QueuedEntry queuedEntry;
+        while ((queuedEntry = queue.poll()) != null) {
+            queued.decrementAndGet();
+            batch.computeIfAbsent(queuedEntry.key(), key -> new ArrayList<>()).add(queuedEntry.entry());
+        }
+
+        int lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            plugin.getLogger().warning("Left " + lost + " private messages out of the history, too many were waiting to be written");
+        }
+        if (log == null) {
+            return;
+        }
+        for (Map.Entry<ConversationKey, List<HistoryEntry>> conversation : batch.entrySet()) {
+            try {
+                log.append(conversation.getKey(), conversation.getValue());
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to write private message history: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads a page of a conversation, newest messages first. Pages held in memory are
+     * returned right away, others are read on the history thread. Must be called on the
+     * main thread, the callback runs on the main thread.
+     *
+     * @param page The page, starting at 0
+     */
+    public void getPage(UUID player, UUID other, int page, Consumer<List<HistoryEntry>> callback) {
+        if (executor == null) {
+            callback.accept(List.of());
+            return;
+        }
+
+        ConversationKey key = ConversationKey.of(player, other);
+        int size = pageSize;
+
+        ArrayDeque<HistoryEntry> messages = recent.get(key);
+        long needed = (long) (page + 1) * size;
+        if (messages != null && messages.size() >= needed) {
+            List<HistoryEntry> entries = new ArrayList<>(size);
+            Iterator<HistoryEntry> iterator = messages.descendingIterator();
+            for (int skipped = 0; skipped < page * size; skipped++) {
+                iterator.next();
+            }
+            while (iterator.hasNext() && entries.size() < size) {
+                entries.add(iterator.next());
+            }
+            callback.accept(entries);
+            return;
+        }
+
+        execute(() -> {
+            // Messages still queued are part of the page
+            writeQueued();
+            List<HistoryEntry> entries = List.of();
+            if (log != null) {
+                try {
+                    entries = log.read(key, page, size);
+                } catch (IOException e) {
+                    plugin.getLogger().warning("Failed to read private message history: " + e.getMessage());
+                }
+            }
+            List<HistoryEntry> result = entries;
+            Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
+        });
+    }
+
+    /**
+     * Renders a message of the history as shown by /msghistory.
+     */
+    public Component render(HistoryEntry entry) {
+        return format.render(placeholder -> switch (placeholder) {
+            case "time" -> Component.text(timeFormat.format(Instant.ofEpochMilli(entry.timestamp())));
+            case "sender" -> Component.text(entry.senderName());
+            case "message" -> ComponentTemplate.valueComponent(entry.message());
+            default -> Component.text("%" + placeholder + "%");
+        });
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // The plugin is shutting down
+        }
+    }
+
+    private record QueuedEntry(ConversationKey key, HistoryEntry entry) {
+    }
+}
@@ -0,0 +1,13 @@
+package gg.gianluca.gianchat.messaging.history;
+
+import java.util.UUID;
+
+/**
+ * A private message kept in the history.
+ *
+ * @param timestamp When the message was sent, in epoch milliseconds
+ * @param senderName The sender's name when the message was sent
+ * @param message The message as typed by the sender
+ */
+public record HistoryEntry(long timestamp, UUID sender, String senderName, String message) {
+}
@@ -0,0 +1,258 @@
+package gg.gianluca.gianchat.messaging.history;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The private message history on disk. Messages of every conversation are appended
+ * to shared segment files, which are rolled over past a size and deleted once they
+ * are older than the retention. Each conversation has an index file with the
+ * position of each of its messages, so a page is read with a few seeks instead of
+ * scanning whole segments. Entries of deleted segments are pruned from the indexes
+ * so pages stay full. Not thread-safe, only used by the history thread.
+ */
+final class HistoryLog {
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int INDEX_ENTRY_SIZE = Integer.BYTES + Long.BYTES;
+
+    private final File segmentsDirectory;
+    private final File indexDirectory;
+    private final long segmentSize;
+    private final long retentionDays;
+    private DataOutputStream output;
+    private int segment;
+    private long position;
+
+    HistoryLog(File directory, long segmentSize, long retentionDays) {
+        this.segmentsDirectory = directory;
+        this.indexDirectory = new File(directory, "index");
+        this.segmentSize = segmentSize;
+        this.retentionDays = retentionDays;
+    }
+
+    void open() throws IOException {
+        indexDirectory.mkdirs();
+        for (int existing : listSegments()) {
+            segment = Math.max(segment, existing);
+        }
+        openSegment(Math.max(segment, 1));
+        deleteExpired();
+        // Segments may have been deleted before their indexes were pruned
+        pruneIndexes();
+    }
+
+    private List<Integer> listSegments() {
+        List<Integer> segments = new ArrayList<>();
+        File[] files = segmentsDirectory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    segments.add(Integer.parseInt(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                    // Not a segment
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private File segmentFile(int segment) {
+        return new File(segmentsDirectory, segment + SEGMENT_SUFFIX);
+    }
+
+    private File indexFile(ConversationKey key) {
+        return new File(indexDirectory, key.fileName() + ".idx");
+    }
+
+    private void openSegment(int segment) throws IOException {
+        close();
+        this.segment = segment;
+        File file = segmentFile(segment);
+        this.position = file.length();
+        this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    /**
+     * Appends messages of a conversation, its index is opened once for all of them.
+     */
+    void append(ConversationKey key, List<HistoryEntry> entries) throws IOException {
+        ByteArrayOutputStream indexEntries = new ByteArrayOutputStream(entries.size() * INDEX_ENTRY_SIZE);
+        DataOutputStream indexOutput = new DataOutputStream(indexEntries);
+        for (HistoryEntry entry : entries) {
+            if (position >= segmentSize) {
+                openSegment(segment + 1);
+                if (deleteExpired()) {
+                    pruneIndexes();
+                }
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entry.message().length());
+            DataOutputStream record = new DataOutputStream(bytes);
+            record.writeLong(entry.timestamp());
+            record.writeLong(entry.sender().getMostSignificantBits());
+            record.writeLong(entry.sender().getLeastSignificantBits());
+            record.writeUTF(entry.senderName());
+            record.writeUTF(entry.message());
+
+            indexOutput.writeInt(segment);
+            indexOutput.writeLong(position);
+            output.writeInt(bytes.size());
+            bytes.writeTo(output);
+            position += Integer.BYTES + bytes.size();
+        }
+        output.flush();
+
+        try (FileOutputStream index = new FileOutputStream(indexFile(key), true)) {
+            indexEntries.writeTo(index);
+        }
+    }
+
+    /**
+     * Reads a page of a conversation, newest messages first.
+     *
+     * @param page The page, starting at 0
+     * @return The page, messages in expired segments are left out
+     */
+    List<HistoryEntry> read(ConversationKey key, int page, int pageSize) throws IOException {
+        File indexFile = indexFile(key);
+        if (!indexFile.exists()) {
+            return List.of();
+        }
+
+        long count = indexFile.length() / INDEX_ENTRY_SIZE;
+        long end = count - (long) page * pageSize;
+        long start = Math.max(0, end - pageSize);
+        if (end <= 0) {
+            return List.of();
+        }
+
+        int[] segments = new int[(int) (end - start)];
+        long[] offsets = new long[segments.length];
+        try (RandomAccessFile index = new RandomAccessFile(indexFile, "r")) {
+            index.seek(start * INDEX_ENTRY_SIZE);
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = index.readInt();
+                offsets[i] = index.readLong();
+            }
+        }
+
+        Map<Integer, RandomAccessFile> files = new HashMap<>();
+        List<HistoryEntry> entries = new ArrayList<>(segments.length);
+        try {
+            for (int i = segments.length - 1; i >= 0; i--) {
+                RandomAccessFile file = files.get(segments[i]);
+                if (file == null && !files.containsKey(segments[i])) {
+                    File segmentFile = segmentFile(segments[i]);
+                    file = segmentFile.exists() ? new RandomAccessFile(segmentFile, "r") : null;
+                    files.put(segments[i], file);
+                }
+                if (file != null) {
+                    entries.add(readEntry(file, offsets[i]));
+                }
+            }
+        } finally {
+            for (RandomAccessFile file : files.values()) {
+                if (file != null) {
+                    file.close();
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static HistoryEntry readEntry(RandomAccessFile file, long offset) throws IOException {
+        file.seek(offset + Integer.BYTES);
+        long timestamp = file.readLong();
+        UUID sender = new UUID(file.readLong(), file.readLong());
+        String senderName = file.readUTF();
+        String message = file.readUTF();
+        return new HistoryEntry(timestamp, sender, senderName, message);
+    }
+
+    /**
+     * Deletes the segments last written to before the retention, never the current one.
+     *
+     * @return Whether a segment was deleted
+     */
+    private boolean deleteExpired() {
+        if (retentionDays <= 0) {
+            return false;
+        }
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+        boolean deleted = false;
+        for (int existing : listSegments()) {
+            File file = segmentFile(existing);
+            if (existing != segment && file.lastModified() < cutoff && file.delete()) {
+                deleted = true;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Removes the entries of deleted segments from every index, indexes left without
+     * entries are deleted.
+     */
+    private void pruneIndexes() throws IOException {
+        File[] files = indexDirectory.listFiles((dir, name) -> name.endsWith(".idx"));
+        if (files == null) {
+            return;
+        }
+        Set<Integer> segments = new HashSet<>(listSegments());
+        for (File file : files) {
+            pruneIndex(file.toPath(), segments);
+        }
+    }
+
+    private static void pruneIndex(Path path, Set<Integer> segments) throws IOException {
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(path));
+        int count = index.remaining() / INDEX_ENTRY_SIZE;
+        ByteBuffer kept = ByteBuffer.allocate(count * INDEX_ENTRY_SIZE);
+        for (int i = 0; i < count; i++) {
+            int entrySegment = index.getInt();
+            long offset = index.getLong();
+            if (segments.contains(entrySegment)) {
+                kept.putInt(entrySegment).putLong(offset);
+            }
+        }
+        if (kept.position() == count * INDEX_ENTRY_SIZE) {
+            return;
+        }
+        if (kept.position() == 0) {
+            Files.delete(path);
+            return;
+        }
+
+        // Replaced as a whole, so a crash leaves either the old or the new index
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temp, Arrays.copyOf(kept.array(), kept.position()));
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void close() throws IOException {
+        if (output != null) {
+            output.close();
+            output = null;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package gg.gianluca.gianchat.messaging.mail;
+
+import gg.gianluca.gianchat.GianChat;
+import gg.gianluca.gianchat.data.PlayerData;
+import gg.gianluca.gianchat.format.ComponentTemplate;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.JoinConfiguration;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Private messages for offline players. Each player has a mailbox file in
+ * {@code plugins/GianChat/mail} that messages are appended to on the mail thread.
+ * A mailbox is only read when its owner joins, and they get their messages in one
+ * paginated notification. Messages are deleted once their page was shown, so /mail
+ * only pages through unread ones. Senders can only have a limited number of messages
+ * waiting, tracked with their expiry so no mailbox has to be read to check it.
+ */
+public class MailManager {
+    private static final String DEFAULT_FORMAT = "<dark_gray>[%time%]</dark_gray> <gray>%sender%: <white>%message%";
+
+    private final GianChat plugin;
+    private final File directory;
+    private final File quotaFile;
+    private final Map<UUID, List<MailMessage>> mailboxes;
+    private final Map<UUID, List<Long>> pending;
+    private volatile boolean enabled;
+    private int maxPerSender;
+    private long expireAfter;
+    private int pageSize;
+    private ComponentTemplate format;
+    private DateTimeFormatter timeFormat;
+    private ExecutorService executor;
+
+    public MailManager(GianChat plugin) {
+        this.plugin = plugin;
+        this.directory = new File(plugin.getDataFolder(), "mail");
+        this.quotaFile = new File(directory, "quotas.dat");
+        this.mailboxes = new HashMap<>();
+        this.pending = new HashMap<>();
+        loadConfig(null);
+    }
+
+    public void loadConfig(ConfigurationSection config) {
+        enabled = config == null || config.getBoolean("enabled", true);
+        maxPerSender = config != null ? config.getInt("max-per-sender", 10) : 10;
+        expireAfter = TimeUnit.DAYS.toMillis(Math.max(1, config != null ? config.getLong("expire-after-days", 14) : 14));
+        pageSize = Math.max(1, config != null ? config.getInt("page-size", 5) : 5);
+        format = ComponentTemplate.compile(config != null ? config.getString("format", DEFAULT_FORMAT) : DEFAULT_FORMAT);
+        try {
+            timeFormat = DateTimeFormatter.ofPattern(config != null ? config.getString("time-format", "dd/MM HH:mm") : "dd/MM HH:mm")
+                .withZone(ZoneId.systemDefault());
+        } catch (IllegalArgumentException e) {
+            timeFormat = DateTimeFormatter.ofPattern("dd/MM HH:mm").withZone(ZoneId.systemDefault());
+            plugin.getLogger().warning("Invalid offline-mail time-format in privatemessages.yml, defaulting to dd/MM HH:mm");
+        }
+    }
+
+    public void start() {
+        if (executor != null) {
+            return;
+        }
+        directory.mkdirs();
+        loadQuotas();
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "GianChat Mail Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Writes every pending message and stops the mail thread.
+     */
+    public void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxPerSender() {
+        return maxPerSender;
+    }
+
+    /**
+     * Queues a message for an offline player. Must be called on the main thread.
+     *
+     * @return false if the sender already has as many messages waiting as allowed
+     */
+    public boolean send(Player sender, UUID recipient, String message) {
+        long now = System.currentTimeMillis();
+        // Stored with the message, so the quota is released even if the expiry setting changes
+        long expiry = now + expireAfter;
+        if (!sender.hasPermission("gianchat.mail.bypass-quota")) {
+            List<Long> expiries = pending.computeIfAbsent(sender.getUniqueId(), k -> new ArrayList<>());
+            expiries.removeIf(pendingExpiry -> pendingExpiry <= now);
+            if (expiries.size() >= maxPerSender) {
+                return false;
+            }
+            expiries.add(expiry);
+            saveQuotas();
+        }
+
+        MailMessage mail = new MailMessage(now, expiry, sender.getUniqueId(), sender.getName(), message);
+        execute(() -> {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(mailboxFile(recipient), true)))) {
+                write(output, mail);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to write mail for " + recipient + ": " + e.getMessage());
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Reads a player's mailbox after they joined and notifies them of their messages.
+     * Must be called on the main thread.
+     */
+    public void deliver(Player player) {
+        if (!enabled || executor == null) {
+            return;
+        }
+
+        UUID uuid = player.getUniqueId();
+        execute(() -> {
+            List<MailMessage> messages = readMailbox(uuid);
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                long now = System.currentTimeMillis();
+                // Offline players' settings may not have been loaded when the mail was sent
+                PlayerData data = plugin.getDataManager().getStoredPlayerData(uuid);
+                Set<UUID> ignored = data != null ? data.getIgnoredPlayers() : Set.of();
+                boolean accepted = data == null || data.isMessagesEnabled();
+                List<MailMessage> current = new ArrayList<>(messages.size());
+                List<MailMessage> dropped = new ArrayList<>();
+                for (MailMessage mail : messages) {
+                    if (accepted && mail.expiry() > now && !ignored.contains(mail.sender())) {
+                        current.add(mail);
+                    } else {
+                        dropped.add(mail);
+                    }
+                }
+                release(dropped);
+                if (current.size() != messages.size()) {
+                    rewriteMailbox(uuid, current);
+                }
+
+                if (player.isOnline() && !current.isEmpty()) {
+                    mailboxes.put(uuid, current);
+                    showPage(player, 1);
+                }
+            });
+        });
+    }
+
+    /**
+     * Forgets a loaded mailbox, unread messages stay on disk for the next join.
+     * Must be called on the main thread.
+     */
+    public void unload(Player player) {
+        mailboxes.remove(player.getUniqueId());
+    }
+
+    /**
+     * Sends a page of a player's unread messages as a single message, then deletes
+     * them. The following page takes the number of the one shown.
+     *
+     * @param page The page, starting at 1
+     */
+    public void showPage(Player player, int page) {
+        List<MailMessage> messages = mailboxes.getOrDefault(player.getUniqueId(), List.of());
+        if (messages.isEmpty()) {
+            player.sendMessage(plugin.getMessageManager().getMessage("mail.empty"));
+            return;
+        }
+
+        int pages = (messages.size() + pageSize - 1) / pageSize;
+        int shown = Math.min(Math.max(1, page), pages);
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("count", String.valueOf(messages.size()));
+        placeholders.put("page", String.valueOf(shown));
+        placeholders.put("pages", String.valueOf(pages));
+        placeholders.put("next_page", String.valueOf(shown));
+
+        List<Component> lines = new ArrayList<>(pageSize + 2);
+        lines.add(plugin.getMessageManager().getMessage("mail.header", placeholders));
+        int start = (shown - 1) * pageSize;
+        List<MailMessage> read = messages.subList(start, Math.min(messages.size(), start + pageSize));
+        for (MailMessage mail : read) {
+            lines.add(render(mail));
+        }
+        lines.add(plugin.getMessageManager().getMessage(pages > 1 ? "mail.footer" : "mail.footer_last", placeholders));
+        player.sendMessage(Component.join(JoinConfiguration.newlines(), lines));
+
+        // Delivered messages give the sender their quota back
+        release(read);
+        read.clear();
+        if (messages.isEmpty()) {
+            mailboxes.remove(player.getUniqueId());
+        }
+        rewriteMailbox(player.getUniqueId(), messages);
+    }
+
+    /**
+     * Deletes a player's mailbox. Must be called on the main thread.
+     */
+    public void clear(Player player) {
+        List<MailMessage> messages = mailboxes.remove(player.getUniqueId());
+        if (messages != null) {
+            release(messages);
+        }
+        UUID uuid = player.getUniqueId();
+        execute(() -> mailboxFile(uuid).delete());
+    }
+
+    private Component render(MailMessage mail) {
+        return format.render(placeholder -> switch (placeholder) {
+            case "time" -> Component.text(timeFormat.format(Instant.ofEpochMilli(mail.timestamp())));
+            case "sender" -> Component.text(mail.senderName());
+            case "message" -> ComponentTemplate.valueComponent(mail.message());
+            default -> Component.text("%" + placeholder + "%");
+        });
+    }
+
+    /**
+     * Gives senders back the quota used by messages that were read, cleared or expired.
+     * The quotas are saved once for all of them.
+     */
+    private void release(List<MailMessage> messages) {
+        boolean released = false;
+        for (MailMessage mail : messages) {
+            List<Long> expiries = pending.get(mail.sender());
+            if (expiries != null && expiries.remove(Long.valueOf(mail.expiry()))) {
+                if (expiries.isEmpty()) {
+                    pending.remove(mail.sender());
+                }
+                released = true;
+            }
+        }
+        if (released) {
+            saveQuotas();
+        }
+    }
+
+    private File mailboxFile(UUID uuid) {
+        return new File(directory, uuid + ".mail");
+    }
+
+    private List<MailMessage> readMailbox(UUID uuid) {
+        File file = mailboxFile(uuid);
+        if (!file.exists()) {
+            return List.of();
+        }
+
+        List<MailMessage> messages = new ArrayList<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                messages.add(new MailMessage(input.readLong(), input.readLong(),
+                    new UUID(input.readLong(), input.readLong()), input.readUTF(), input.readUTF()));
+            }
+        } catch (EOFException e) {
+            // End of the mailbox
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to read mail of " + uuid + ": " + e.getMessage());
+        }
+        return messages;
+    }
+
+    private void rewriteMailbox(UUID uuid, List<MailMessage> messages) {
+        List<MailMessage> snapshot = List.copyOf(messages);
+        execute(() -> {
+            File file = mailboxFile(uuid);
+            if (snapshot.isEmpty()) {
+                file.delete();
+                return;
+            }
+            File temp = new File(directory, uuid + ".mail.tmp");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                for (MailMessage mail : snapshot) {
+                    write(output, mail);
+                }
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to write mail for " + uuid + ": " + e.getMessage());
+                return;
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to write mail for " + uuid + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private static void write(DataOutputStream output, MailMessage mail) throws IOException {
+        output.writeLong(mail.timestamp());
+        output.writeLong(mail.expiry());
+        output.writeLong(mail.sender().getMostSignificantBits());
+        output.writeLong(mail.sender().getLeastSignificantBits());
+        output.writeUTF(mail.senderName());
+        output.writeUTF(mail.message());
+    }
+
+    private void loadQuotas() {
+        if (!quotaFile.exists()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(quotaFile)))) {
+            int senders = input.readInt();
+            for (int i = 0; i < senders; i++) {
+                UUID sender = new UUID(input.readLong(), input.readLong());
+                int count = input.readInt();
+                List<Long> expiries = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    long expiry = input.readLong();
+                    if (expiry > now) {
+                        expiries.add(expiry);
+                    }
+                }
+                if (!expiries.isEmpty()) {
+                    pending.put(sender, expiries);
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to read mail quotas: " + e.getMessage());
+        }
+    }
+
+    private void saveQuotas() {
+        // Expired entries are dropped while copying, the copy is written on the mail thread
+        long now = System.currentTimeMillis();
+        Map<UUID, long[]> snapshot = new HashMap<>();
+        for (Iterator<Map.Entry<UUID, List<Long>>> iterator = pending.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<UUID, List<Long>> entry = iterator.next();
+            entry.getValue().removeIf(expiry -> expiry <= now);
+            if (entry.getValue().isEmpty()) {
+                iterator.remove();
+            } else {
+                snapshot.put(entry.getKey(), entry.getValue().stream().mapToLong(Long::longValue).toArray());
+            }
+        }
+
+        execute(() -> {
+            File temp = new File(directory, "quotas.dat.tmp");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                output.writeInt(snapshot.size());
+                for (Map.Entry<UUID, long[]> entry : snapshot.entrySet()) {
+                    output.writeLong(entry.getKey().getMostSignificantBits());
+                    output.writeLong(entry.getKey().getLeastSignificantBits());
+                    output.writeInt(entry.getValue().length);
+                    for (long expiry : entry.getValue()) {
+                        output.writeLong(expiry);
+                    }
+                }
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to write mail quotas: " + e.getMessage());
+                return;
+            }
+            try {
+                Files.move(temp.toPath(), quotaFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to write mail quotas: " + e.getMessage());
+            }
+        });
+    }
+
+    private void execute(Runnable task) {
+        if (executor == null) {
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // The plugin is shutting down
+        }
+    }
+}
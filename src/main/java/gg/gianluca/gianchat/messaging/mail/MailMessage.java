@@ -0,0 +1,14 @@
+package gg.gianluca.gianchat.messaging.mail;
+
+import java.util.UUID;
+
+/**
+ * A private message waiting for an offline player.
+ *
+ * @param timestamp When the message was sent, in epoch milliseconds
+ * @param expiry When the message is deleted, in epoch milliseconds
+ * @param senderName The sender's name when the message was sent
+ * @param message The message as typed by the sender
+ */
+public record MailMessage(long timestamp, long expiry, UUID sender, String senderName, String message) {
+}
@@ -2,6 +2,9 @@ package gg.gianluca.gianchat.placeholders;
 
 import gg.gianluca.gianchat.GianChat;
 import gg.gianluca.gianchat.format.ChatFormat;
+import gg.gianluca.gianchat.stats.LatencyHistogram;
+import gg.gianluca.gianchat.stats.Stage;
+import gg.gianluca.gianchat.stats.StatisticsManager;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 import org.bukkit.OfflinePlayer;
@@ -64,6 +67,18 @@ public class GianChatExpansion extends PlaceholderExpansion {
             return handleMentionPlaceholder(onlinePlayer, mentionParam);
         }
 
+        // Placeholder cache related placeholders
+        if (params.startsWith("cache_")) {
+            String cacheParam = params.substring(6);
+            return handleCachePlaceholder(cacheParam);
+        }
+
+        // Chat statistics placeholders
+        if (params.startsWith("stats_")) {
+            String statsParam = params.substring(6);
+            return handleStatsPlaceholder(statsParam);
+        }
+
         return null;
     }
 
@@ -110,4 +125,47 @@ public class GianChatExpansion extends PlaceholderExpansion {
             default -> null;
         };
     }
-} 
\ No newline at end of file
+
+    private String handleCachePlaceholder(String param) {
+        PlaceholderCache cache = plugin.getPlaceholderCache();
+        return switch (param) {
+            case "hits" -> String.valueOf(cache.getHits());
+            case "misses" -> String.valueOf(cache.getMisses());
+            case "evictions" -> String.valueOf(cache.getEvictions());
+            case "size" -> String.valueOf(cache.getSize());
+            case "hit_rate" -> String.format("%.1f", cache.getHitRate() * 100);
+            default -> null;
+        };
+    }
+
+    private String handleStatsPlaceholder(String param) {
+        StatisticsManager statistics = plugin.getStatistics();
+        switch (param) {
+            case "messages_per_second":
+                return String.format("%.2f", statistics.getChatMessagesPerSecond());
+            case "private_messages_per_second":
+                return String.format("%.2f", statistics.getPrivateMessagesPerSecond());
+        }
+
+        // <stage>_<p50|p99|max|mean|count>, durations are in milliseconds
+        int separator = param.lastIndexOf('_');
+        Stage stage = separator > 0 ? Stage.fromKey(param.substring(0, separator)) : null;
+        if (stage == null) {
+            return null;
+        }
+
+        LatencyHistogram histogram = statistics.getHistogram(stage);
+        return switch (param.substring(separator + 1)) {
+            case "p50" -> formatMillis(histogram.getPercentile(50));
+            case "p99" -> formatMillis(histogram.getPercentile(99));
+            case "max" -> formatMillis(histogram.getMax());
+            case "mean" -> formatMillis(histogram.getMean());
+            case "count" -> String.valueOf(histogram.getCount());
+            default -> null;
+        };
+    }
+
+    private String formatMillis(long nanos) {
+        return String.format("%.3f", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,214 @@
+package gg.gianluca.gianchat.placeholders;
+
+import gg.gianluca.gianchat.GianChat;
+import gg.gianluca.gianchat.format.ComponentTemplate;
+import me.clip.placeholderapi.PlaceholderAPI;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.regex.Matcher;
+
+/**
+ * Caches PlaceholderAPI results per player and placeholder.
+ * Every placeholder has a time to live from the {@code placeholder-cache}
+ * section of config.yml, a TTL of 0 disables caching for it. The cache holds
+ * at most {@code max-entries} values and evicts the least recently used.
+ */
+public class PlaceholderCache {
+    private final GianChat plugin;
+    private final Map<CacheKey, CacheEntry> entries;
+    private final Map<String, Long> ttlByPlaceholder;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private volatile BiFunction<Player, String, String> backend;
+    private volatile boolean enabled;
+    private volatile int maxEntries;
+    private volatile long defaultTtl;
+    private volatile Map<String, Long> configuredTtls;
+
+    public PlaceholderCache(GianChat plugin) {
+        this.plugin = plugin;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.ttlByPlaceholder = new ConcurrentHashMap<>();
+        this.backend = (player, placeholder) -> PlaceholderAPI.setPlaceholders(player, "%" + placeholder + "%");
+        loadConfig();
+    }
+
+    public void loadConfig() {
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("placeholder-cache");
+        Map<String, Long> ttls = new HashMap<>();
+        if (config == null) {
+            enabled = true;
+            maxEntries = 10000;
+            defaultTtl = TimeUnit.SECONDS.toNanos(5);
+        } else {
+            enabled = config.getBoolean("enabled", true);
+            maxEntries = Math.max(1, config.getInt("max-entries", 10000));
+            defaultTtl = TimeUnit.SECONDS.toNanos(config.getLong("default-ttl", 5));
+
+            ConfigurationSection ttlConfig = config.getConfigurationSection("ttl");
+            if (ttlConfig != null) {
+                for (String placeholder : ttlConfig.getKeys(false)) {
+                    ttls.put(placeholder, TimeUnit.SECONDS.toNanos(ttlConfig.getLong(placeholder)));
+                }
+            }
+        }
+        configuredTtls = ttls;
+        ttlByPlaceholder.clear();
+        invalidateAll();
+    }
+
+    /**
+     * Resolves a single placeholder for a player.
+     *
+     * @param player The player to resolve for
+     * @param placeholder The placeholder identifier, without percent signs
+     * @return The resolved value
+     */
+    public String resolve(Player player, String placeholder) {
+        long ttl = getTtl(placeholder);
+        if (!enabled || ttl <= 0 || player == null) {
+            return backend.apply(player, placeholder);
+        }
+
+        CacheKey key = new CacheKey(player.getUniqueId(), placeholder);
+        long now = System.nanoTime();
+        synchronized (entries) {
+            CacheEntry entry = entries.get(key);
+            if (entry != null && entry.expiresAt() - now > 0) {
+                hits.increment();
+                return entry.value();
+            }
+        }
+
+        // Resolve outside the lock, expansions can be slow
+        misses.increment();
+        String value = backend.apply(player, placeholder);
+        synchronized (entries) {
+            entries.put(key, new CacheEntry(value, now + ttl));
+        }
+        return value;
+    }
+
+    /**
+     * Cached replacement for {@link PlaceholderAPI#setPlaceholders(org.bukkit.OfflinePlayer, String)}.
+     */
+    public String setPlaceholders(Player player, String text) {
+        if (text == null || text.indexOf('%') < 0) {
+            return text;
+        }
+
+        Matcher matcher = ComponentTemplate.PLACEHOLDER_PATTERN.matcher(text);
+        StringBuilder builder = null;
+        int last = 0;
+        while (matcher.find()) {
+            if (builder == null) {
+                builder = new StringBuilder(text.length() + 16);
+            }
+            builder.append(text, last, matcher.start()).append(resolve(player, matcher.group(1)));
+            last = matcher.end();
+        }
+        if (builder == null) {
+            return text;
+        }
+        return builder.append(text, last, text.length()).toString();
+    }
+
+    private long getTtl(String placeholder) {
+        return ttlByPlaceholder.computeIfAbsent(placeholder, key -> {
+            Map<String, Long> ttls = configuredTtls;
+            Long exact = ttls.get(key);
+            if (exact != null) {
+                return exact;
+            }
+
+            // Longest matching wildcard wins
+            long ttl = defaultTtl;
+            int longest = -1;
+            for (Map.Entry<String, Long> entry : ttls.entrySet()) {
+                String pattern = entry.getKey();
+                if (pattern.endsWith("*") && pattern.length() > longest
+                        && key.startsWith(pattern.substring(0, pattern.length() - 1))) {
+                    ttl = entry.getValue();
+                    longest = pattern.length();
+                }
+            }
+            return ttl;
+        });
+    }
+
+    public void invalidate(UUID uuid) {
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> key.player().equals(uuid));
+        }
+    }
+
+    public void invalidate(Player player) {
+        invalidate(player.getUniqueId());
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Replaces the function used to resolve placeholders on a cache miss.
+     * Only meant for benchmarks and tests running without PlaceholderAPI.
+     */
+    public void setBackend(BiFunction<Player, String, String> backend) {
+        this.backend = backend;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private record CacheKey(UUID player, String placeholder) {
+    }
+
+    private record CacheEntry(String value, long expiresAt) {
+    }
+}
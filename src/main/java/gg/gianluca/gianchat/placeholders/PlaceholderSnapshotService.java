@@ -0,0 +1,212 @@
+package gg.gianluca.gianchat.placeholders;
+
+import gg.gianluca.gianchat.GianChat;
+import gg.gianluca.gianchat.format.ChatFormat;
+import gg.gianluca.gianchat.format.ComponentTemplate;
+import gg.gianluca.gianchat.format.PlaceholderClassifier;
+import gg.gianluca.gianchat.format.PlaceholderScope;
+import gg.gianluca.gianchat.stats.Stage;
+import me.clip.placeholderapi.PlaceholderAPI;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+/**
+ * Resolves the placeholders chat formats need for every online player on the
+ * main thread and publishes them as immutable snapshots. Async chat only reads
+ * snapshots, so PlaceholderAPI expansions are never called off the main thread.
+ * Refreshing is spread over ticks with a lookup and time budget per tick.
+ */
+public class PlaceholderSnapshotService {
+    private final GianChat plugin;
+    private final Map<UUID, PlaceholderSnapshot> snapshots;
+    private final ConcurrentLinkedDeque<UUID> queue;
+    private final Set<UUID> queued;
+    private BukkitTask task;
+    private int refreshInterval;
+    private int maxLookupsPerTick;
+    private long maxNanosPerTick;
+    private long currentTick;
+    private long nextCycle;
+
+    public PlaceholderSnapshotService(GianChat plugin) {
+        this.plugin = plugin;
+        this.snapshots = new ConcurrentHashMap<>();
+        this.queue = new ConcurrentLinkedDeque<>();
+        this.queued = ConcurrentHashMap.newKeySet();
+        loadConfig();
+    }
+
+    public void loadConfig() {
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("placeholder-snapshots");
+        refreshInterval = Math.max(1, config != null ? config.getInt("refresh-interval", 20) : 20);
+        maxLookupsPerTick = Math.max(1, config != null ? config.getInt("max-lookups-per-tick", 200) : 200);
+        maxNanosPerTick = TimeUnit.MICROSECONDS.toNanos(
+            (long) ((config != null ? config.getDouble("max-millis-per-tick", 2.0) : 2.0) * 1000));
+    }
+
+    public void start() {
+        stop();
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private void tick() {
+        currentTick++;
+        if (queue.isEmpty() && currentTick >= nextCycle) {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                if (queued.add(player.getUniqueId())) {
+                    queue.addLast(player.getUniqueId());
+                }
+            }
+            nextCycle = currentTick + refreshInterval;
+        }
+
+        long deadline = System.nanoTime() + maxNanosPerTick;
+        int lookups = 0;
+        while (lookups < maxLookupsPerTick && System.nanoTime() - deadline < 0) {
+            UUID uuid = queue.pollFirst();
+            if (uuid == null) {
+                break;
+            }
+            queued.remove(uuid);
+
+            Player player = Bukkit.getPlayer(uuid);
+            if (player != null) {
+                lookups += refresh(player);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds a player's snapshot right away. Must be called on the main thread.
+     *
+     * @return The number of placeholders resolved
+     */
+    public int refresh(Player player) {
+        long started = plugin.getStatistics().start();
+        Map<String, String> values = new HashMap<>();
+        PlaceholderCache cache = plugin.getPlaceholderCache();
+        for (Map.Entry<String, Boolean> entry : getRequiredPlaceholders(player).entrySet()) {
+            String placeholder = entry.getKey();
+            String value = entry.getValue()
+                ? PlaceholderAPI.setPlaceholders(player, "%" + placeholder + "%")
+                : cache.resolve(player, placeholder);
+            if (value != null) {
+                values.put(placeholder, value);
+            }
+        }
+        snapshots.put(player.getUniqueId(), new PlaceholderSnapshot(Map.copyOf(values), System.currentTimeMillis()));
+        plugin.getStatistics().record(Stage.PLACEHOLDER_REFRESH, started);
+        return values.size();
+    }
+
+    /**
+     * Gets every placeholder a player's snapshot should hold, mapped to whether it varies over time.
+     */
+    private Map<String, Boolean> getRequiredPlaceholders(Player player) {
+        Map<String, Boolean> placeholders = new HashMap<>();
+
+        // Placeholders resolved for this player as a sender
+        plugin.getFormatManager().getFormatForPlayer(player).ifPresent(format -> {
+            for (String placeholder : format.getPlaceholders(PlaceholderScope.SENDER)) {
+                placeholders.put(placeholder, false);
+            }
+            for (String placeholder : format.getPlaceholders(PlaceholderScope.TIME_VARYING)) {
+                placeholders.put(placeholder, true);
+            }
+        });
+
+        // Placeholders resolved for this player as a viewer of any format
+        Set<String> viewerPlaceholders = new LinkedHashSet<>();
+        for (ChatFormat format : plugin.getFormatManager().getFormats()) {
+            for (String placeholder : format.getPlaceholders(PlaceholderScope.VIEWER)) {
+                if (!placeholder.startsWith(PlaceholderClassifier.RELATIONAL_PREFIX)) {
+                    viewerPlaceholders.add(PlaceholderClassifier.viewerPlaceholder(placeholder));
+                }
+            }
+        }
+        for (String placeholder : viewerPlaceholders) {
+            placeholders.putIfAbsent(placeholder, false);
+        }
+        return placeholders;
+    }
+
+    /**
+     * Queues a player to be refreshed before everyone else. Safe to call from any thread.
+     */
+    public void requestRefresh(UUID uuid) {
+        if (queued.add(uuid)) {
+            queue.addFirst(uuid);
+        }
+    }
+
+    public void requestRefreshAll() {
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            requestRefresh(player.getUniqueId());
+        }
+    }
+
+    public void remove(Player player) {
+        snapshots.remove(player.getUniqueId());
+    }
+
+    public PlaceholderSnapshot getSnapshot(Player player) {
+        return snapshots.get(player.getUniqueId());
+    }
+
+    /**
+     * Gets a placeholder from a player's latest snapshot. Safe to call from any thread.
+     *
+     * @return The value, or null if the snapshot doesn't hold it yet
+     */
+    public String get(Player player, String placeholder) {
+        PlaceholderSnapshot snapshot = snapshots.get(player.getUniqueId());
+        String value = snapshot != null ? snapshot.values().get(placeholder) : null;
+        if (value == null) {
+            requestRefresh(player.getUniqueId());
+        }
+        return value;
+    }
+
+    /**
+     * Replaces the placeholders in a text that the player's snapshot holds,
+     * leaving every other placeholder as written.
+     */
+    public String setPlaceholders(Player player, String text) {
+        PlaceholderSnapshot snapshot = snapshots.get(player.getUniqueId());
+        if (snapshot == null || text.indexOf('%') < 0) {
+            return text;
+        }
+
+        Matcher matcher = ComponentTemplate.PLACEHOLDER_PATTERN.matcher(text);
+        StringBuilder builder = new StringBuilder(text.length());
+        int last = 0;
+        while (matcher.find()) {
+            String value = snapshot.values().get(matcher.group(1));
+            builder.append(text, last, matcher.start()).append(value != null ? value : matcher.group());
+            last = matcher.end();
+        }
+        return builder.append(text, last, text.length()).toString();
+    }
+
+    public record PlaceholderSnapshot(Map<String, String> values, long createdAt) {
+    }
+}
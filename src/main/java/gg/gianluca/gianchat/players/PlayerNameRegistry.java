@@ -0,0 +1,207 @@
+package gg.gianluca.gianchat.players;
+
+import gg.gianluca.gianchat.GianChat;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Caches the plain-text names and display names of online players, so chat and
+ * commands never serialize a display name themselves. Names are updated on join
+ * and quit, and display names, which have no change event, are compared periodically.
+ * Written on the main thread, safe to read from any thread.
+ */
+public class PlayerNameRegistry {
+    private final GianChat plugin;
+    private final Map<UUID, PlayerNames> players;
+    private final NavigableMap<String, PlayerNames> byName;
+    private final Map<String, PlayerNames> byDisplayName;
+    private final List<Listener> listeners;
+    private BukkitTask task;
+
+    /**
+     * Notified on the main thread whenever a player's names change.
+     */
+    public interface Listener {
+        void namesChanged(PlayerNames names);
+
+        void playerRemoved(UUID uuid);
+    }
+
+    public PlayerNameRegistry(GianChat plugin) {
+        this.plugin = plugin;
+        this.players = new ConcurrentHashMap<>();
+        this.byName = new ConcurrentSkipListMap<>();
+        this.byDisplayName = new ConcurrentHashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    public void start() {
+        stop();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            update(player);
+        }
+
+        int interval = Math.max(1, plugin.getConfig().getInt("mentions.display-name-check-interval", 20));
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::checkDisplayNames, interval, interval);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    private void checkDisplayNames() {
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            update(player);
+        }
+    }
+
+    /**
+     * Adds a player or refreshes their names. Must be called on the main thread.
+     */
+    public void update(Player player) {
+        String displayName = PlainTextComponentSerializer.plainText().serialize(player.displayName());
+        PlayerNames previous = players.get(player.getUniqueId());
+        if (previous != null && previous.name().equals(player.getName()) && previous.displayName().equals(displayName)) {
+            return;
+        }
+
+        PlayerNames names = new PlayerNames(player.getUniqueId(), player.getName(), displayName);
+        if (previous != null) {
+            unindex(previous);
+        }
+        players.put(names.uuid(), names);
+        byName.put(names.lowerName(), names);
+        byDisplayName.putIfAbsent(names.lowerDisplayName(), names);
+
+        for (Listener listener : listeners) {
+            listener.namesChanged(names);
+        }
+    }
+
+    /**
+     * Removes a player. Must be called on the main thread.
+     */
+    public void remove(Player player) {
+        PlayerNames names = players.remove(player.getUniqueId());
+        if (names == null) {
+            return;
+        }
+        unindex(names);
+
+        for (Listener listener : listeners) {
+            listener.playerRemoved(names.uuid());
+        }
+    }
+
+    private void unindex(PlayerNames names) {
+        byName.remove(names.lowerName(), names);
+        if (!byDisplayName.remove(names.lowerDisplayName(), names)) {
+            return;
+        }
+        // Another online player may share the display name, they take it over
+        for (PlayerNames other : players.values()) {
+            if (!other.uuid().equals(names.uuid()) && other.lowerDisplayName().equals(names.lowerDisplayName())) {
+                byDisplayName.put(other.lowerDisplayName(), other);
+                return;
+            }
+        }
+    }
+
+    public PlayerNames getNames(UUID uuid) {
+        return players.get(uuid);
+    }
+
+    public Collection<PlayerNames> getAll() {
+        return players.values();
+    }
+
+    /**
+     * Finds an online player by an exact name first, then an exact display name, then the
+     * shortest name starting with the input. Unlike {@link Bukkit#getPlayer(String)}, display
+     * names are matched too. When several players share a display name, one of them is returned.
+     *
+     * @return The player's names, or null if nobody matched
+     */
+    public PlayerNames find(String input) {
+        String lower = input.toLowerCase();
+        PlayerNames names = byName.get(lower);
+        if (names != null) {
+            return names;
+        }
+        names = byDisplayName.get(lower);
+        if (names != null) {
+            return names;
+        }
+
+        PlayerNames shortest = null;
+        for (PlayerNames candidate : byName.tailMap(lower, false).values()) {
+            if (!candidate.lowerName().startsWith(lower)) {
+                break;
+            }
+            if (shortest == null || candidate.name().length() < shortest.name().length()) {
+                shortest = candidate;
+            }
+        }
+        return shortest;
+    }
+
+    /**
+     * Finds an online player by name or display name.
+     *
+     * @return The player, or null if nobody matched
+     */
+    public Player findPlayer(String input) {
+        PlayerNames names = find(input);
+        return names != null ? Bukkit.getPlayer(names.uuid()) : null;
+    }
+
+    /**
+     * Finds a player who may be offline: online players first, then the names the server
+     * has cached, which never needs a web lookup.
+     *
+     * @return The player, or null if the name isn't known
+     */
+    public OfflinePlayer findKnown(String input) {
+        Player online = findPlayer(input);
+        if (online != null) {
+            return online;
+        }
+        OfflinePlayer offline = Bukkit.getOfflinePlayerIfCached(input);
+        return offline != null && (offline.isOnline() || offline.hasPlayedBefore()) ? offline : null;
+    }
+
+    /**
+     * Returns the online players whose name starts with the input, in alphabetical order.
+     */
+    public List<PlayerNames> complete(String prefix) {
+        String lower = prefix.toLowerCase();
+        List<PlayerNames> matches = new ArrayList<>();
+        for (PlayerNames names : byName.tailMap(lower, true).values()) {
+            if (!names.lowerName().startsWith(lower)) {
+                break;
+            }
+            matches.add(names);
+        }
+        return matches;
+    }
+}
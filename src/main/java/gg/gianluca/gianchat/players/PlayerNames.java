@@ -0,0 +1,18 @@
+package gg.gianluca.gianchat.players;
+
+import java.util.UUID;
+
+/**
+ * The names of an online player, cached by {@link PlayerNameRegistry}.
+ *
+ * @param name The player's name
+ * @param displayName The player's display name as plain text
+ * @param lowerName The name in lowercase
+ * @param lowerDisplayName The display name in lowercase
+ */
+public record PlayerNames(UUID uuid, String name, String displayName, String lowerName, String lowerDisplayName) {
+
+    public PlayerNames(UUID uuid, String name, String displayName) {
+        this(uuid, name, displayName, name.toLowerCase(), displayName.toLowerCase());
+    }
+}
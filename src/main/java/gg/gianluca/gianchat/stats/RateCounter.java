@@ -0,0 +1,59 @@
+package gg.gianluca.gianchat.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts events in one second slots to report a rate over the last minute.
+ */
+public class RateCounter {
+    private static final int SLOTS = 60;
+
+    private final AtomicLongArray counts;
+    private final AtomicLongArray seconds;
+
+    public RateCounter() {
+        this.counts = new AtomicLongArray(SLOTS);
+        this.seconds = new AtomicLongArray(SLOTS);
+        reset();
+    }
+
+    public void increment() {
+        long second = currentSecond();
+        // nanoTime may be negative
+        int slot = (int) Math.floorMod(second, SLOTS);
+        long stamp = seconds.get(slot);
+        if (stamp != second && seconds.compareAndSet(slot, stamp, second)) {
+            // First event of a new second reuses the slot of a minute ago
+            counts.set(slot, 0);
+        }
+        counts.incrementAndGet(slot);
+    }
+
+    /**
+     * Gets the average number of events per second over the last completed minute.
+     */
+    public double getPerSecond() {
+        long now = currentSecond();
+        long events = 0;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            long stamp = seconds.get(slot);
+            if (stamp < now && stamp >= now - (SLOTS - 1)) {
+                events += counts.get(slot);
+            }
+        }
+        return (double) events / (SLOTS - 1);
+    }
+
+    public void reset() {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            // Never counted as recent, whatever the clock reads
+            seconds.set(slot, Long.MIN_VALUE);
+            counts.set(slot, 0);
+        }
+    }
+
+    private static long currentSecond() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+}
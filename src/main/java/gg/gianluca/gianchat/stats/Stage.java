@@ -0,0 +1,43 @@
+package gg.gianluca.gianchat.stats;
+
+/**
+ * A measured stage of the chat or private message pipeline.
+ */
+public enum Stage {
+    CHAT_TOTAL("chat_total", "Chat total"),
+    CHAT_PARSE("chat_parse", "Message parsing"),
+    CHAT_MENTIONS("chat_mentions", "Mentions"),
+    CHAT_RENDER("chat_render", "Format rendering"),
+    CHAT_EVENT("chat_event", "Chat event"),
+    CHAT_FANOUT("chat_fanout", "Viewer fanout"),
+    PLACEHOLDER_REFRESH("placeholder_refresh", "Placeholder refresh"),
+    PRIVATE_MESSAGE_TOTAL("pm_total", "Private message total"),
+    PRIVATE_MESSAGE_RENDER("pm_render", "Private message rendering"),
+    PRIVATE_MESSAGE_EVENT("pm_event", "Private message event"),
+    PRIVATE_MESSAGE_DELIVERY("pm_delivery", "Private message delivery");
+
+    private final String key;
+    private final String displayName;
+
+    Stage(String key, String displayName) {
+        this.key = key;
+        this.displayName = displayName;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public static Stage fromKey(String key) {
+        for (Stage stage : values()) {
+            if (stage.key.equals(key)) {
+                return stage;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+package gg.gianluca.gianchat.stats;
+
+import gg.gianluca.gianchat.GianChat;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Records how long every stage of the chat and private message pipelines takes.
+ * Timing a stage costs one {@link System#nanoTime()} call and a histogram update,
+ * so it is cheap enough to leave enabled on a live server.
+ *
+ * <pre>{@code
+ * long time = statistics.start();
+ * parse();
+ * time = statistics.record(Stage.CHAT_PARSE, time);
+ * render();
+ * statistics.record(Stage.CHAT_RENDER, time);
+ * }</pre>
+ */
+public class StatisticsManager {
+    private final GianChat plugin;
+    private final Map<Stage, LatencyHistogram> histograms;
+    private final RateCounter chatMessages;
+    private final RateCounter privateMessages;
+    private volatile boolean enabled;
+
+    public StatisticsManager(GianChat plugin) {
+        this.plugin = plugin;
+        this.histograms = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+        this.chatMessages = new RateCounter();
+        this.privateMessages = new RateCounter();
+        loadConfig();
+    }
+
+    public void loadConfig() {
+        enabled = plugin.getConfig().getBoolean("statistics.enabled", true);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing a stage.
+     *
+     * @return The start time, or 0 if statistics are disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records a stage that started at {@code start}.
+     *
+     * @return The current time, to be used as the start of the next stage
+     */
+    public long record(Stage stage, long start) {
+        if (start == 0L) {
+            return 0L;
+        }
+        long now = System.nanoTime();
+        histograms.get(stage).record(now - start);
+        return now;
+    }
+
+    public void countChatMessage() {
+        if (enabled) {
+            chatMessages.increment();
+        }
+    }
+
+    public void countPrivateMessage() {
+        if (enabled) {
+            privateMessages.increment();
+        }
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    public double getChatMessagesPerSecond() {
+        return chatMessages.getPerSecond();
+    }
+
+    public double getPrivateMessagesPerSecond() {
+        return privateMessages.getPerSecond();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        chatMessages.reset();
+        privateMessages.reset();
+    }
+
+    /**
+     * Formats a duration for chat, in microseconds below a millisecond.
+     */
+    public static String formatDuration(long nanos) {
+        if (nanos < 1_000_000) {
+            return (nanos / 1000) + "µs";
+        }
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+}